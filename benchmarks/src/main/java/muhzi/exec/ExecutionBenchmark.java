@@ -0,0 +1,101 @@
+package muhzi.exec;
+
+import muhzi.parser.Parser;
+import muhzi.parser.SyntaxTreeNode;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xss64m")
+public class ExecutionBenchmark {
+
+    public enum Workload {
+        // sum of i * j over a square, two nested loops
+        NESTED_LOOPS("read n; sum := 0; i := 0;\n" +
+                "repeat\n" +
+                "  j := 0;\n" +
+                "  repeat sum := sum + i * j; j := j + 1 until n < j + 1;\n" +
+                "  i := i + 1\n" +
+                "until i = n;\n" +
+                "write sum", 300),
+        // primes below n by trial division
+        PRIMES("read n; count := 0; i := 2;\n" +
+                "repeat\n" +
+                "  prime := 1; d := 2;\n" +
+                "  repeat\n" +
+                "    if i - (i / d) * d = 0 then prime := 0 end;\n" +
+                "    d := d + 1\n" +
+                "  until (i < d * d) + (prime = 0);\n" +
+                "  if prime then count := count + 1 end;\n" +
+                "  i := i + 1\n" +
+                "until n < i + 1;\n" +
+                "write count", 5000),
+        // greatest common divisors by Euclid, short inner loops
+        GCD("read n; a := 1; total := 0;\n" +
+                "repeat\n" +
+                "  x := a * 7 + 3; y := a * 5 + 11;\n" +
+                "  repeat\n" +
+                "    t := x - (x / y) * y; x := y; y := t\n" +
+                "  until y = 0;\n" +
+                "  total := total + x;\n" +
+                "  a := a + 1\n" +
+                "until n < a;\n" +
+                "write total", 20000);
+
+        final String source;
+        final int n;
+
+        Workload(String source, int n) {
+            this.source = source;
+            this.n = n;
+        }
+    }
+
+    @Param({"NESTED_LOOPS", "PRIMES", "GCD"})
+    public Workload workload;
+
+    private SyntaxTreeNode root;
+    private Program program;
+    private NativeProgram nativeProgram;
+
+    @Setup
+    public void setUp() {
+        root = new Parser().parse(new BufferedReader(new StringReader(workload.source)));
+        program = BytecodeCompiler.compile(root);
+        nativeProgram = new JitCompiler(1).compile(program);
+    }
+
+    @Benchmark
+    public int[] bytecode() throws IOException {
+        return new Interpreter(Input.of(workload.n), Output.NONE).run(program);
+    }
+
+    @Benchmark
+    public int[] compileAndRun() throws IOException {
+        return new Interpreter(Input.of(workload.n), Output.NONE).run(BytecodeCompiler.compile(root));
+    }
+
+    @Benchmark
+    public int[] jit() throws IOException {
+        return nativeProgram.run(Input.of(workload.n), Output.NONE);
+    }
+
+    // a fresh compiler misses its cache, the class is generated and loaded every time
+    @Benchmark
+    public int[] jitCompileAndRun() throws IOException {
+        return new JitCompiler(1).compile(root).run(Input.of(workload.n), Output.NONE);
+    }
+
+    @Benchmark
+    public Object treeWalking() throws IOException {
+        return new TreeWalkingInterpreter(Input.of(workload.n), Output.NONE).run(root);
+    }
+}
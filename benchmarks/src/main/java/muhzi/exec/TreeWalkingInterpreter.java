@@ -0,0 +1,98 @@
+package muhzi.exec;
+
+import muhzi.parser.NodeKind;
+import muhzi.parser.SyntaxTreeNode;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+final class TreeWalkingInterpreter {
+    /*
+    * The baseline the bytecode interpreter is measured against: evaluates
+    * the node views of the tree recursively, keeps variables in a map by
+    * name and reads every constant from its lexeme as it goes. Same
+    * semantics as Interpreter, without the loop limit.
+    */
+
+    private final Input input;
+    private final Output output;
+    private final HashMap<String, Integer> variables = new HashMap<>();
+
+    TreeWalkingInterpreter(Input input, Output output) {
+        this.input = input;
+        this.output = output;
+    }
+
+    HashMap<String, Integer> run(SyntaxTreeNode root) throws IOException {
+        variables.clear();
+        runStatements(root);
+        return variables;
+    }
+
+    private void runStatements(SyntaxTreeNode statement) throws IOException {
+        for (; statement != null; statement = statement.getNextSameLevelNode()) {
+            runStatement(statement);
+        }
+    }
+
+    private void runStatement(SyntaxTreeNode statement) throws IOException {
+        SyntaxTreeNode[] children = statement.getChildren();
+        switch (statement.getKind()) {
+            case ASSIGN:
+                variables.put(statement.getValue(), evaluate(children[0]));
+                break;
+            case READ:
+                Integer value = input.read(statement.getValue());
+                if (value == null)
+                    throw error("No input left to read " + statement.getValue(), statement);
+                variables.put(statement.getValue(), value);
+                break;
+            case WRITE:
+                output.write(evaluate(children[0]));
+                break;
+            case IF:
+                if (evaluate(children[0]) != 0) {
+                    runStatements(children[1]);
+                } else if (children.length > 2) {
+                    runStatements(children[2]);
+                }
+                break;
+            case REPEAT:
+                do {
+                    runStatements(children[0]);
+                } while (evaluate(children[1]) == 0);
+                break;
+        }
+    }
+
+    private int evaluate(SyntaxTreeNode node) {
+        if (node.getKind() == NodeKind.CONST)
+            return Integer.parseInt(node.getValue());
+        if (node.getKind() == NodeKind.ID)
+            return variables.getOrDefault(node.getValue(), 0);
+
+        SyntaxTreeNode[] children = node.getChildren();
+        int a = evaluate(children[0]);
+        int b = evaluate(children[1]);
+        switch (node.getValue()) {
+            case "+":
+                return a + b;
+            case "-":
+                return a - b;
+            case "*":
+                return a * b;
+            case "/":
+                if (b == 0)
+                    throw error("Division by zero", node);
+                return a / b;
+            case "<":
+                return a < b ? 1 : 0;
+            default:
+                return a == b ? 1 : 0;
+        }
+    }
+
+    private static ExecutionError error(String message, SyntaxTreeNode node) {
+        return new ExecutionError(message, node.getOffset(), node.getLine(), node.getColumn());
+    }
+}
@@ -0,0 +1,47 @@
+package muhzi.parser;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xss64m")
+public class ConcurrentParseBenchmark {
+    /*
+    * One Parser shared by every benchmark thread, compare the per-thread
+    * score of the single and all-threads runs to see how parsing scales.
+    */
+
+    @Param({"SMALL", "LARGE"})
+    public TinyProgramGenerator.Shape shape;
+
+    private final Parser parser = new Parser();
+    private String source;
+
+    @Setup
+    public void setUp() {
+        source = TinyProgramGenerator.generate(shape).source;
+    }
+
+    private SyntaxTreeNode parse() {
+        return parser.parse(new BufferedReader(new StringReader(source)));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public SyntaxTreeNode sharedParserOneThread() {
+        return parse();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public SyntaxTreeNode sharedParserAllThreads() {
+        return parse();
+    }
+}
@@ -0,0 +1,48 @@
+package muhzi.parser;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xss64m", "-Xmx2g"})
+public class IncrementalParseBenchmark {
+
+    @Param({"LARGE", "MILLION_STATEMENTS"})
+    public TinyProgramGenerator.Shape shape;
+
+    private TinyProgramGenerator.Program program;
+    private IncrementalParser incrementalParser;
+    private int digitOffset;
+    private char digit = '0';
+
+    @Setup
+    public void setUp() {
+        program = TinyProgramGenerator.generate(shape);
+        incrementalParser = new IncrementalParser();
+        incrementalParser.parse(program.source);
+
+        // a keystroke in the middle of the program: retyping a digit
+        digitOffset = program.source.length() / 2;
+        while (!Character.isDigit(program.source.charAt(digitOffset))) {
+            digitOffset++;
+        }
+    }
+
+    @Benchmark
+    public SyntaxTreeNode keystroke() {
+        digit = digit == '9' ? '0' : (char) (digit + 1);
+        return incrementalParser.edit(digitOffset, 1, String.valueOf(digit));
+    }
+
+    @Benchmark
+    public SyntaxTreeNode fullParse() {
+        return new Parser().parse(new BufferedReader(new StringReader(program.source)));
+    }
+}
@@ -0,0 +1,44 @@
+package muhzi.parser;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xss64m")
+public class ParserBenchmark {
+
+    @Param({"SMALL", "LARGE", "DEEP_NESTING", "LONG_EXPRESSION"})
+    public TinyProgramGenerator.Shape shape;
+
+    private TinyProgramGenerator.Program program;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long bytes;
+        public long statements;
+        public long nodes;
+    }
+
+    @Setup
+    public void setUp() {
+        program = TinyProgramGenerator.generate(shape);
+    }
+
+    @Benchmark
+    public SyntaxTreeNode parse(Counters counters) {
+        SyntaxTreeNode root = new Parser().parse(new BufferedReader(new StringReader(program.source)));
+
+        counters.bytes += program.source.length();
+        counters.statements += program.statements;
+        counters.nodes += root.getTree().size();
+        return root;
+    }
+}
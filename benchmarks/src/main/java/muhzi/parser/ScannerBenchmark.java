@@ -0,0 +1,76 @@
+package muhzi.parser;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xss64m")
+public class ScannerBenchmark {
+
+    @Param({"SMALL", "LARGE", "DEEP_NESTING", "LONG_EXPRESSION"})
+    public TinyProgramGenerator.Shape shape;
+
+    private String source;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long tokens;
+        public long bytes;
+    }
+
+    @Setup
+    public void setUp() {
+        source = TinyProgramGenerator.generate(shape).source;
+    }
+
+    @Benchmark
+    public int scan(Counters counters) throws IOException {
+        Scanner scanner = new Scanner(new BufferedReader(new StringReader(source)));
+        int tokens = 0;
+        while (scanner.getNextToken().getKind() != TokenKind.EOF) {
+            tokens++;
+        }
+
+        counters.tokens += tokens;
+        counters.bytes += source.length();
+        return tokens;
+    }
+
+    @Benchmark
+    public int tokenStream(Counters counters) throws IOException {
+        TokenStream stream = new TokenStream(new BufferedReader(new StringReader(source)));
+        stream.ensure(0);
+        int tokens = 0;
+        while (stream.kind() != TokenKind.EOF) {
+            stream.advance();
+            tokens++;
+        }
+
+        counters.tokens += tokens;
+        counters.bytes += source.length();
+        return tokens;
+    }
+
+    @Benchmark
+    public int tokenIterator(Counters counters) {
+        TokenStream stream = new TokenStream(new BufferedReader(new StringReader(source)));
+        int tokens = 0;
+        while (stream.hasNext()) {
+            stream.next();
+            tokens++;
+        }
+
+        counters.tokens += tokens;
+        counters.bytes += source.length();
+        return tokens;
+    }
+}
@@ -0,0 +1,37 @@
+package muhzi.parser;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class SyntaxTreeBenchmark {
+
+    @Param({"SMALL", "LARGE", "DEEP_NESTING", "LONG_EXPRESSION", "MILLION_STATEMENTS"})
+    public TinyProgramGenerator.Shape shape;
+
+    private SyntaxTreeNode root;
+
+    @Setup
+    public void setUp() {
+        String source = TinyProgramGenerator.generate(shape).source;
+        root = new Parser().parse(new BufferedReader(new StringReader(source)));
+    }
+
+    @Benchmark
+    public int getLevelWidth() {
+        return SyntaxTreeNode.getLevelWidth(root);
+    }
+
+    @Benchmark
+    public int[] getLevelWidths() {
+        return root.getTree().getLevelWidths();
+    }
+}
@@ -0,0 +1,57 @@
+package muhzi.parser;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xss64m", "-Xmx2g"})
+public class SyntaxTreeFormatBenchmark {
+
+    @Param({"LARGE", "MILLION_STATEMENTS"})
+    public TinyProgramGenerator.Shape shape;
+
+    private String source;
+    private SyntaxTreeNode root;
+    private Path treeFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        source = TinyProgramGenerator.generate(shape).source;
+        root = new Parser().parse(new BufferedReader(new StringReader(source)));
+        treeFile = Files.createTempFile("tree", ".ast");
+        SyntaxTreeWriter.write(root, treeFile);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(treeFile);
+    }
+
+    @Benchmark
+    public SyntaxTreeNode read() throws IOException {
+        return SyntaxTreeReader.read(treeFile);
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        try (OutputStream out = Files.newOutputStream(treeFile)) {
+            new SyntaxTreeWriter(out).write(root);
+        }
+    }
+
+    @Benchmark
+    public SyntaxTreeNode fullParse() {
+        return new Parser().parse(new BufferedReader(new StringReader(source)));
+    }
+}
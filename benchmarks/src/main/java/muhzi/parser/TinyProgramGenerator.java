@@ -0,0 +1,181 @@
+package muhzi.parser;
+
+import java.util.Random;
+
+public final class TinyProgramGenerator {
+    /*
+    * Generates synthetic, syntactically valid tiny programs for the
+    * benchmarks. The same shape and seed always produce the same source.
+    */
+
+    public enum Shape {
+        SMALL,
+        LARGE,
+        DEEP_NESTING,
+        LONG_EXPRESSION,
+        MILLION_STATEMENTS
+    }
+
+    static final class Program {
+        final String source;
+        final int statements;
+
+        private Program(String source, int statements) {
+            this.source = source;
+            this.statements = statements;
+        }
+    }
+
+    private static final int SMALL_STATEMENTS = 20;
+    private static final int LARGE_STATEMENTS = 20000;
+    private static final int NESTING_DEPTH = 200;
+    private static final int EXPRESSION_OPERATORS = 2000;
+    private static final int MILLION_STATEMENTS = 1000000;
+
+    private static final String[] OPERATORS = {"+", "-", "*", "/"};
+
+    private final Random random;
+    private final StringBuilder out = new StringBuilder();
+    private int statements;
+
+    private TinyProgramGenerator(long seed) {
+        random = new Random(seed);
+    }
+
+    static Program generate(Shape shape) {
+        return generate(shape, 42);
+    }
+
+    static Program generate(Shape shape, long seed) {
+        TinyProgramGenerator generator = new TinyProgramGenerator(seed);
+        switch (shape) {
+            case SMALL:
+                generator.statementSequence(SMALL_STATEMENTS, 2);
+                break;
+            case LARGE:
+                generator.statementSequence(LARGE_STATEMENTS, 3);
+                break;
+            case DEEP_NESTING:
+                generator.nested(NESTING_DEPTH);
+                break;
+            case LONG_EXPRESSION:
+                generator.longExpressions();
+                break;
+            case MILLION_STATEMENTS:
+                generator.statementSequence(MILLION_STATEMENTS, 1);
+                break;
+        }
+        return new Program(generator.out.toString(), generator.statements);
+    }
+
+    private void statementSequence(int count, int maxDepth) {
+        for (int i = 0; i < count; i++) {
+            if (i > 0)
+                out.append(";\n");
+            statement(maxDepth);
+        }
+    }
+
+    private void statement(int depth) {
+        statements++;
+        int choice = random.nextInt(depth > 0 ? 10 : 8);
+        if (choice < 4) {
+            out.append(identifier()).append(" := ");
+            expression(3);
+        } else if (choice < 6) {
+            out.append("read ").append(identifier());
+        } else if (choice < 8) {
+            out.append("write ");
+            expression(2);
+        } else if (choice == 8) {
+            out.append("if ");
+            comparison();
+            out.append(" then\n");
+            statementSequence(1 + random.nextInt(3), depth - 1);
+            if (random.nextBoolean()) {
+                out.append("\nelse\n");
+                statementSequence(1 + random.nextInt(3), depth - 1);
+            }
+            out.append("\nend");
+        } else {
+            out.append("repeat\n");
+            statementSequence(1 + random.nextInt(3), depth - 1);
+            out.append("\nuntil ");
+            comparison();
+        }
+    }
+
+    private void nested(int depth) {
+        for (int level = 0; level < depth; level++) {
+            statements++;
+            if (level % 2 == 0) {
+                out.append("if ");
+                comparison();
+                out.append(" then\n");
+            } else {
+                out.append("repeat\n");
+            }
+            out.append(identifier()).append(" := ");
+            expression(2);
+            out.append(";\n");
+            statements++;
+        }
+
+        out.append("write ").append(identifier());
+        statements++;
+        for (int level = depth - 1; level >= 0; level--) {
+            if (level % 2 == 0) {
+                out.append("\nend");
+            } else {
+                out.append("\nuntil ");
+                comparison();
+            }
+        }
+    }
+
+    private void longExpressions() {
+        for (int i = 0; i < 4; i++) {
+            if (i > 0)
+                out.append(";\n");
+            statements++;
+            out.append(identifier()).append(" := ");
+            factor(0);
+            for (int op = 0; op < EXPRESSION_OPERATORS; op++) {
+                out.append(' ').append(OPERATORS[random.nextInt(OPERATORS.length)]).append(' ');
+                factor(1);
+            }
+        }
+    }
+
+    private void comparison() {
+        expression(2);
+        out.append(random.nextBoolean() ? " < " : " = ");
+        expression(2);
+    }
+
+    private void expression(int maxOperators) {
+        factor(1);
+        int operators = random.nextInt(maxOperators + 1);
+        for (int i = 0; i < operators; i++) {
+            out.append(' ').append(OPERATORS[random.nextInt(OPERATORS.length)]).append(' ');
+            factor(1);
+        }
+    }
+
+    private void factor(int depth) {
+        int choice = random.nextInt(depth > 0 ? 5 : 4);
+        if (choice < 2) {
+            out.append(identifier());
+        } else if (choice < 4) {
+            out.append(random.nextInt(1000));
+        } else {
+            out.append('(');
+            expression(2);
+            out.append(')');
+        }
+    }
+
+    private String identifier() {
+        return "v" + random.nextInt(64);
+    }
+}
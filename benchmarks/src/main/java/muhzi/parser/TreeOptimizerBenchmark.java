@@ -0,0 +1,61 @@
+package muhzi.parser;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xss64m")
+public class TreeOptimizerBenchmark {
+
+    @Param({"LARGE", "LONG_EXPRESSION"})
+    public TinyProgramGenerator.Shape shape;
+
+    private SyntaxTreeNode root;
+    private SyntaxTreeNode optimized;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long nodesBefore;
+        public long nodesAfter;
+    }
+
+    @Setup
+    public void setUp() {
+        root = new Parser().parse(new BufferedReader(new StringReader(TinyProgramGenerator.generate(shape).source)));
+        optimized = TreeOptimizer.optimize(root).getTree();
+    }
+
+    @Benchmark
+    public SyntaxTreeNode optimize(Counters counters) {
+        OptimizationResult result = TreeOptimizer.optimize(root);
+        counters.nodesBefore = result.getNodesBefore();
+        counters.nodesAfter = result.getNodesAfter();
+        return result.getTree();
+    }
+
+    @Benchmark
+    public int writeOriginal() throws IOException {
+        return write(root);
+    }
+
+    @Benchmark
+    public int writeOptimized() throws IOException {
+        return write(optimized);
+    }
+
+    private static int write(SyntaxTreeNode tree) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SyntaxTreeWriter(out).write(tree);
+        return out.size();
+    }
+}
@@ -0,0 +1,178 @@
+package muhzi.app;
+
+import javafx.application.Platform;
+import muhzi.parser.IncrementalParser;
+import muhzi.parser.ParseCache;
+import muhzi.parser.ParseMetricsRegistry;
+import muhzi.parser.ParseTraceListener;
+import muhzi.parser.SyntaxTreeNode;
+import muhzi.parser.errors.ParserError;
+import muhzi.parser.errors.SyntaxError;
+import muhzi.parser.errors.TokenError;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+final class BackgroundParser {
+    /*
+    * Keeps the tree of the code area up to date on a worker thread. Edits
+    * are queued as they happen on the FX thread and applied to an
+    * IncrementalParser once typing pauses, a newer edit cancels the parse
+    * still waiting and interrupts a full parse in progress.
+    *
+    * Results are handed back to the FX thread, those of a parse that was
+    * superseded by newer edits are dropped. The tree is updated in place,
+    * so it is only given to the listener while the worker is kept off it.
+    *
+    * Full parses go through a cache of recent texts, opening a file again
+    * or undoing back to a text parsed before does not parse it again.
+    * Every parse is recorded in the given metrics.
+    */
+
+    interface Listener {
+        void parsed(SyntaxTreeNode tree);
+
+        void failed(Error error);
+    }
+
+    private static final long DEBOUNCE_MILLIS = 150;
+    private static final long CACHE_NODES = 4_000_000;
+
+    private static final class Edit {
+        private final int offset;
+        private final int removedLength;
+        private final String inserted;
+
+        private Edit(int offset, int removedLength, String inserted) {
+            this.offset = offset;
+            this.removedLength = removedLength;
+            this.inserted = inserted;
+        }
+    }
+
+    private final IncrementalParser parser;
+    private final Listener listener;
+
+    private final ConcurrentLinkedQueue<Edit> edits = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock treeLock = new ReentrantLock();
+    private final AtomicLong generation = new AtomicLong();
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "background-parser");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // only touched on the FX thread
+    private Future<?> pending;
+
+    BackgroundParser(ParseTraceListener traceListener, ParseMetricsRegistry metrics, Listener listener) {
+        this.parser = new IncrementalParser(traceListener, new ParseCache(CACHE_NODES), metrics);
+        this.listener = listener;
+    }
+
+    void edit(int offset, int removedLength, String inserted) {
+        edits.add(new Edit(offset, removedLength, inserted));
+        generation.incrementAndGet();
+        schedule(DEBOUNCE_MILLIS);
+    }
+
+    void parseNow() {
+        schedule(0);
+    }
+
+    private void schedule(long delayMillis) {
+        if (pending != null)
+            pending.cancel(true);
+
+        long scheduled = generation.get();
+        pending = worker.schedule(() -> parse(scheduled), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void parse(long scheduled) {
+        SyntaxTreeNode tree;
+        Error error = null;
+        treeLock.lock();
+        try {
+            for (Edit edit; (edit = edits.poll()) != null; ) {
+                if (parser.getTree() == null) {
+                    // no tree to update, the text is parsed once at the end
+                    parser.replaceText(edit.offset, edit.removedLength, edit.inserted);
+                    error = null;
+                } else {
+                    try {
+                        parser.edit(edit.offset, edit.removedLength, edit.inserted);
+                    } catch (ParserError | SyntaxError | TokenError e) {
+                        error = e;
+                    } catch (StackOverflowError e) {
+                        error = nestedTooDeeply();
+                    }
+                }
+            }
+
+            if (parser.getTree() == null && error == null) {
+                try {
+                    parser.parse();
+                } catch (ParserError | SyntaxError | TokenError e) {
+                    error = e;
+                } catch (StackOverflowError e) {
+                    error = nestedTooDeeply();
+                }
+            }
+            tree = parser.getTree();
+        } catch (CancellationException e) {
+            // superseded, the parse scheduled by the newer edit takes over
+            return;
+        } finally {
+            treeLock.unlock();
+        }
+
+        Error failure = error;
+        Platform.runLater(() -> publish(scheduled, tree, failure));
+    }
+
+    private static ParserError nestedTooDeeply() {
+        return new ParserError("Program is nested too deeply to parse");
+    }
+
+    private void publish(long scheduled, SyntaxTreeNode tree, Error error) {
+        if (scheduled != generation.get())
+            return;
+
+        if (tree == null) {
+            listener.failed(error);
+        } else if (treeLock.tryLock()) {
+            try {
+                listener.parsed(tree);
+            } finally {
+                treeLock.unlock();
+            }
+        }
+    }
+
+    /*
+    * Hands the last tree to the listener again, to draw it anew. Nothing
+    * happens while the worker is busy, it will publish a tree itself.
+    */
+    void republish() {
+        if (!treeLock.tryLock())
+            return;
+
+        try {
+            SyntaxTreeNode tree = parser.getTree();
+            if (tree != null)
+                listener.parsed(tree);
+        } finally {
+            treeLock.unlock();
+        }
+    }
+
+    void shutdown() {
+        worker.shutdownNow();
+    }
+}
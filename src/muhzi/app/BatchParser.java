@@ -0,0 +1,355 @@
+package muhzi.app;
+
+import muhzi.parser.OptimizationResult;
+import muhzi.parser.ParseCache;
+import muhzi.parser.ParseMetricsRegistry;
+import muhzi.parser.ParseResult;
+import muhzi.parser.ParseTraceListener;
+import muhzi.parser.Parser;
+import muhzi.parser.SyntaxTreeNode;
+import muhzi.parser.TreeOptimizer;
+import muhzi.parser.errors.Diagnostic;
+import muhzi.parser.errors.ParserError;
+import muhzi.parser.errors.SyntaxError;
+import muhzi.parser.errors.TokenError;
+
+import javax.management.JMException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class BatchParser {
+    /*
+    * Headless entry point, parses every given file (directories are walked
+    * recursively) in parallel and prints one result line per file followed
+    * by the aggregate throughput. The exit status is 1 when any file fails
+    * to parse and 2 on a usage error.
+    *
+    * With a cache directory the results are kept there by content, files
+    * left unchanged since an earlier run are not parsed again. In
+    * recovering mode every error of a file is printed with its line and
+    * column, the cache only knows first errors and is not used then.
+    * With optimization every tree that parsed is run through the
+    * TreeOptimizer and what it eliminated is added up over all files.
+    * With metrics the parses are recorded in a ParseMetricsRegistry,
+    * watchable through JMX while the batch runs, and its histograms are
+    * printed at the end.
+    */
+
+    private static final String USAGE =
+            "usage: BatchParser [-t threads] [-e fork-join|fixed|virtual] " +
+            "[-x extension] [-c cache-directory] [-r] [-O] [-m] [-q] <file or directory>...";
+
+    // what the optimizer did, kept without the optimized tree so that
+    // results waiting to be reported do not hold on to their trees
+    private static final class OptimizationCounts {
+        private long nodesBefore;
+        private long nodesAfter;
+        private long foldedConstants;
+        private long simplifiedIdentities;
+        private long deadBranches;
+        private long commonSubexpressions;
+
+        private void add(OptimizationResult optimization) {
+            nodesBefore += optimization.getNodesBefore();
+            nodesAfter += optimization.getNodesAfter();
+            foldedConstants += optimization.getFoldedConstants();
+            simplifiedIdentities += optimization.getSimplifiedIdentities();
+            deadBranches += optimization.getDeadBranches();
+            commonSubexpressions += optimization.getCommonSubexpressions();
+        }
+
+        private void add(OptimizationCounts counts) {
+            nodesBefore += counts.nodesBefore;
+            nodesAfter += counts.nodesAfter;
+            foldedConstants += counts.foldedConstants;
+            simplifiedIdentities += counts.simplifiedIdentities;
+            deadBranches += counts.deadBranches;
+            commonSubexpressions += counts.commonSubexpressions;
+        }
+
+        @Override
+        public String toString() {
+            return (nodesBefore - nodesAfter) + " of " + nodesBefore + " nodes eliminated, " +
+                    foldedConstants + " constants folded, " + simplifiedIdentities + " identities simplified, " +
+                    deadBranches + " dead branches removed, " + commonSubexpressions + " common subexpressions";
+        }
+    }
+
+    private static final class Result {
+        private final Path path;
+        private final long bytes;
+        private final String error;
+        private final List<Diagnostic> diagnostics;
+        private final OptimizationCounts optimization;
+
+        private Result(Path path, long bytes, String error) {
+            this(path, bytes, error, Collections.emptyList(), null);
+        }
+
+        private Result(Path path, long bytes, String error, List<Diagnostic> diagnostics,
+                       OptimizationCounts optimization) {
+            this.path = path;
+            this.bytes = bytes;
+            this.error = error;
+            this.diagnostics = diagnostics;
+            this.optimization = optimization;
+        }
+
+        private boolean failed() {
+            return error != null || !diagnostics.isEmpty();
+        }
+    }
+
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private String executorKind = "fork-join";
+    private String extension = "";
+    private boolean quiet;
+    private boolean recovering;
+    private boolean optimizing;
+    private boolean measuring;
+    private Path cacheDirectory;
+    private final List<Path> inputs = new ArrayList<>();
+
+    private static final long CACHE_NODES = 16_000_000;
+
+    private ParseMetricsRegistry metrics;
+    private Parser parser;
+    private ParseCache cache;
+
+    public static void main(String[] args) {
+        BatchParser batch = new BatchParser();
+        ExecutorService executor = null;
+        try {
+            batch.parseArguments(args);
+            executor = batch.newExecutor();
+            batch.createParser();
+            batch.openCache();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+        System.exit(batch.run(executor, System.out) ? 0 : 1);
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-t":
+                case "--threads":
+                    threads = Integer.parseInt(argumentValue(args, ++i));
+                    if (threads < 1)
+                        throw new IllegalArgumentException("Invalid number of threads: " + threads);
+                    break;
+                case "-e":
+                case "--executor":
+                    executorKind = argumentValue(args, ++i);
+                    break;
+                case "-x":
+                case "--extension":
+                    extension = argumentValue(args, ++i);
+                    break;
+                case "-c":
+                case "--cache":
+                    cacheDirectory = Paths.get(argumentValue(args, ++i));
+                    break;
+                case "-r":
+                case "--recover":
+                    recovering = true;
+                    break;
+                case "-O":
+                case "--optimize":
+                    optimizing = true;
+                    break;
+                case "-m":
+                case "--metrics":
+                    measuring = true;
+                    break;
+                case "-q":
+                case "--quiet":
+                    quiet = true;
+                    break;
+                default:
+                    inputs.add(Paths.get(args[i]));
+            }
+        }
+
+        if (inputs.isEmpty())
+            throw new IllegalArgumentException("No input files");
+        if (recovering && cacheDirectory != null)
+            throw new IllegalArgumentException("A cache cannot be used when recovering");
+    }
+
+    private static String argumentValue(String[] args, int i) {
+        if (i >= args.length)
+            throw new IllegalArgumentException("Missing value for " + args[i - 1]);
+        return args[i];
+    }
+
+    private ExecutorService newExecutor() {
+        switch (executorKind) {
+            case "fork-join":
+                return new ForkJoinPool(threads);
+            case "fixed":
+                return Executors.newFixedThreadPool(threads);
+            case "virtual":
+                try {
+                    return (ExecutorService) Executors.class
+                            .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalArgumentException("Virtual threads need Java 21 or later");
+                }
+            default:
+                throw new IllegalArgumentException("Unknown executor: " + executorKind);
+        }
+    }
+
+    private void createParser() {
+        if (measuring) {
+            metrics = new ParseMetricsRegistry();
+            try {
+                metrics.register("batch");
+            } catch (JMException e) {
+                System.err.println("Metrics are not visible through JMX: " + e);
+            }
+        }
+        parser = new Parser(ParseTraceListener.NONE, metrics);
+    }
+
+    private void openCache() {
+        if (cacheDirectory == null)
+            return;
+        try {
+            cache = new ParseCache(parser, CACHE_NODES, cacheDirectory);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot open cache directory: " + e);
+        }
+    }
+
+    private List<Path> collectFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path input : inputs) {
+            if (Files.isDirectory(input)) {
+                try (Stream<Path> walk = Files.walk(input)) {
+                    files.addAll(walk
+                            .filter(Files::isRegularFile)
+                            .filter(p -> p.getFileName().toString().endsWith(extension))
+                            .sorted()
+                            .collect(Collectors.toList()));
+                }
+            } else {
+                files.add(input);
+            }
+        }
+        return files;
+    }
+
+    private Result parseFile(Path path) {
+        long bytes = 0;
+        try {
+            bytes = Files.size(path);
+            SyntaxTreeNode tree;
+            List<Diagnostic> diagnostics = Collections.emptyList();
+            if (recovering) {
+                ParseResult result = parser.parseRecovering(path);
+                tree = result.getTree();
+                diagnostics = result.getDiagnostics();
+            } else if (cache == null) {
+                tree = parser.parse(path);
+            } else {
+                tree = cache.parse(path);
+            }
+            OptimizationCounts optimization = null;
+            if (optimizing && diagnostics.isEmpty()) {
+                optimization = new OptimizationCounts();
+                optimization.add(TreeOptimizer.optimize(tree));
+            }
+            return new Result(path, bytes, null, diagnostics, optimization);
+        } catch (SyntaxError | TokenError e) {
+            if (!e.hasPosition())
+                return new Result(path, bytes, e.getMessage());
+            return new Result(path, bytes, null, Collections.singletonList(
+                    new Diagnostic(e.getMessage(), e.getOffset(), e.getLine(), e.getColumn())), null);
+        } catch (ParserError e) {
+            return new Result(path, bytes, e.getMessage());
+        } catch (StackOverflowError e) {
+            return new Result(path, bytes, "Program is nested too deeply to parse");
+        } catch (IOException e) {
+            return new Result(path, bytes, e.toString());
+        }
+    }
+
+    boolean run(ExecutorService executor, PrintStream out) {
+        List<Path> files;
+        try {
+            files = collectFiles();
+        } catch (IOException e) {
+            System.err.println("Cannot list input files: " + e);
+            executor.shutdown();
+            return false;
+        }
+
+        long start = System.nanoTime();
+        List<Future<Result>> futures = new ArrayList<>(files.size());
+        for (Path file : files) {
+            futures.add(executor.submit(() -> parseFile(file)));
+        }
+
+        int failed = 0;
+        long bytes = 0;
+        OptimizationCounts optimized = new OptimizationCounts();
+        try {
+            // report in input order, whatever order the files finish in
+            for (Future<Result> future : futures) {
+                Result result = future.get();
+                bytes += result.bytes;
+                if (result.optimization != null)
+                    optimized.add(result.optimization);
+                if (result.failed()) {
+                    failed++;
+                    if (result.error != null)
+                        out.println("FAIL " + result.path + ": " + result.error);
+                    for (Diagnostic diagnostic : result.diagnostics) {
+                        out.println("FAIL " + result.path + ":" + diagnostic);
+                    }
+                } else if (!quiet) {
+                    out.println("OK   " + result.path);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            e.getCause().printStackTrace();
+            return false;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        double seconds = Math.max(System.nanoTime() - start, 1) / 1e9;
+        out.printf("%d files, %d ok, %d failed, %d bytes in %.3f s " +
+                        "(%.1f files/s, %.2f MB/s) on %d %s threads%n",
+                files.size(), files.size() - failed, failed, bytes, seconds,
+                files.size() / seconds, bytes / seconds / 1e6, threads, executorKind);
+        if (cache != null)
+            out.println("cache: " + cache);
+        if (metrics != null)
+            out.println("metrics: " + metrics);
+        if (optimizing)
+            out.println("optimizer: " + optimized);
+        return failed == 0;
+    }
+}
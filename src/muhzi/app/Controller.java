@@ -3,12 +3,13 @@ package muhzi.app;
 import javafx.scene.control.*;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
-import muhzi.parser.Parser;
+import muhzi.parser.AsyncTraceWriter;
+import muhzi.parser.ParseMetricsRegistry;
+import muhzi.parser.ParseTraceListener;
 import muhzi.parser.SyntaxTreeNode;
-import muhzi.parser.errors.ParserError;
-import muhzi.parser.errors.SyntaxError;
-import muhzi.parser.errors.TokenError;
+import muhzi.parser.errors.SourceError;
 
+import javax.management.JMException;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -23,11 +24,62 @@ public class Controller {
     public Label drawingPaneLabel;
 
     private Stage stage;
+    private AsyncTraceWriter traceWriter;
+    private final ParseMetricsRegistry metrics = new ParseMetricsRegistry();
+    private BackgroundParser parser;
+    private String treeLabel;
+    private boolean alertOnError;
+
+    public void initialize() {
+        treeLabel = drawingPaneLabel.getText();
+        drawingPane.trackViewport(scrollPane);
+        try {
+            metrics.register("gui");
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+        parser = new BackgroundParser(getTraceListener(), metrics, new BackgroundParser.Listener() {
+            @Override
+            public void parsed(SyntaxTreeNode tree) {
+                showTree(tree);
+            }
+
+            @Override
+            public void failed(Error error) {
+                showError(error);
+            }
+        });
+
+        drawingPane.setRelayoutHandler(parser::republish);
+
+        // the code is parsed in the background as it is typed
+        codeTextArea.setTextFormatter(new TextFormatter<>(this::trackEdit));
+    }
 
     void setStage(Stage stage) {
         this.stage = stage;
     }
 
+    private ParseTraceListener getTraceListener() {
+        if (traceWriter == null) {
+            try {
+                traceWriter = AsyncTraceWriter.openDefault();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return ParseTraceListener.NONE;
+            }
+        }
+        return traceWriter;
+    }
+
+    private TextFormatter.Change trackEdit(TextFormatter.Change change) {
+        if (change.isContentChange()) {
+            parser.edit(change.getRangeStart(),
+                    change.getRangeEnd() - change.getRangeStart(), change.getText());
+        }
+        return change;
+    }
+
     public void handleAbout() {
         String header = "Copyright (C) 2019 Muhammed Ziad\n" +
                 "<airomyst517@gmail.com>";
@@ -47,22 +99,35 @@ public class Controller {
     }
 
     public void handleParse() {
-        drawingPane.clearPane(drawingPaneLabel);
+        alertOnError = true;
+        parser.parseNow();
+    }
 
-        Parser parser = new Parser();
-        Reader inputCode = new StringReader(codeTextArea.getText()+"\n");
-        BufferedReader br = new BufferedReader(inputCode);
+    private void showTree(SyntaxTreeNode syntaxTree) {
+        alertOnError = false;
+        drawingPane.clearPane(drawingPaneLabel);
+        drawingPaneLabel.setText(treeLabel);
+        long start = System.nanoTime();
+        drawingPane.drawTree(syntaxTree, 0.1*scrollPane.getWidth(), 0.1*scrollPane.getHeight());
+        metrics.recordDrawing(System.nanoTime() - start);
+    }
 
-        try {
-            SyntaxTreeNode syntaxTree = parser.parse(br);
-            drawingPane.drawTree(syntaxTree, 0.1*scrollPane.getWidth(), 0.1*scrollPane.getHeight());
-        } catch (ParserError | SyntaxError | TokenError e) {
-            Alert alert = new Alert(Alert.AlertType.ERROR);
-            alert.setTitle("Exception Dialog");
-            alert.setHeaderText("Error occurred while parsing the code...");
-            alert.setContentText(e.getMessage());
-            alert.showAndWait();
+    private void showError(Error error) {
+        String position = "";
+        if (error instanceof SourceError && ((SourceError) error).hasPosition()) {
+            SourceError sourceError = (SourceError) error;
+            position = "line " + sourceError.getLine() + ", column " + sourceError.getColumn() + ": ";
         }
+        drawingPaneLabel.setText(" - " + position + error.getMessage());
+        if (!alertOnError)
+            return;
+
+        alertOnError = false;
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle("Exception Dialog");
+        alert.setHeaderText("Error occurred while parsing the code...");
+        alert.setContentText(position + error.getMessage());
+        alert.showAndWait();
     }
 
     public void handleOpen() {
@@ -82,6 +147,19 @@ public class Controller {
     }
 
     public void handleExit() {
+        parser.shutdown();
+        try {
+            metrics.unregister();
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+        if (traceWriter != null) {
+            try {
+                traceWriter.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
         stage.close();
     }
 }
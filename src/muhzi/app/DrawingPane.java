@@ -1,157 +1,247 @@
 package muhzi.app;
 
-import javafx.scene.Node;
+import javafx.geometry.Bounds;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.Label;
+import javafx.scene.control.ScrollPane;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
 import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
-import javafx.scene.shape.Ellipse;
-import javafx.scene.shape.Line;
-import javafx.scene.shape.Rectangle;
-import javafx.scene.shape.Shape;
-import javafx.scene.text.Text;
+import javafx.scene.text.TextAlignment;
 
 import muhzi.parser.SyntaxTreeNode;
 
+import static muhzi.app.TreeLayout.NODE_HEIGHT;
+import static muhzi.app.TreeLayout.NODE_WIDTH;
+
 public class DrawingPane extends Pane {
+    /*
+    * Paints the syntax tree on a canvas that only covers the visible part
+    * of the enclosing ScrollPane. The pane takes the size of the whole
+    * tree so the scroll bars work, but each repaint only visits the nodes
+    * and links the layout index finds in the viewport, whatever the size
+    * of the tree.
+    *
+    * Ctrl + scroll zooms in and out, zooming out also closes the deeper
+    * rows. Clicking a placeholder opens it, which needs a new layout of
+    * the tree, the pane asks for one through its relayout handler.
+    */
+
+    private static final Color STATEMENT_COLOR = Color.rgb(48, 89, 164);
+    private static final Color EXPRESSION_COLOR = Color.rgb(102, 21, 19);
+    private static final Color PLACEHOLDER_COLOR = Color.GRAY;
+
+    private static final double MIN_SCALE = 0.05;
+    private static final double MAX_SCALE = 4;
+    private static final double ZOOM_STEP = 1.1;
+
+    // below this scale labels would not be readable anyway
+    private static final double MIN_TEXT_SCALE = 0.4;
+
+    private final Canvas canvas = new Canvas();
+    private ScrollPane scrollPane;
+    private TreeLayout layout;
+    private final TreeDetail detail = new TreeDetail();
+    private Runnable relayoutHandler;
+    private double scale = 1;
+
+    public DrawingPane() {
+        this.getChildren().add(canvas);
+        this.addEventFilter(ScrollEvent.SCROLL, this::zoom);
+        this.setOnMouseClicked(this::expand);
+        this.widthProperty().addListener(observable -> repaint());
+        this.heightProperty().addListener(observable -> repaint());
+    }
 
-    private static int NODE_WIDTH = 60;
-    private static int NODE_HEIGHT = 40;
-    private static int NODE_GAP = 15;
+    void trackViewport(ScrollPane scrollPane) {
+        this.scrollPane = scrollPane;
+        scrollPane.hvalueProperty().addListener(observable -> repaint());
+        scrollPane.vvalueProperty().addListener(observable -> repaint());
+        scrollPane.viewportBoundsProperty().addListener(observable -> repaint());
+    }
+
+    void setRelayoutHandler(Runnable handler) {
+        relayoutHandler = handler;
+    }
 
     void drawTree(SyntaxTreeNode root, double xPos, double yPos) {
         if (root == null)
             return;
 
-        // add current node
-        addNode(root, xPos, yPos);
-
-        // determine first child position
-        double childX = xPos;
-        double childY = yPos + 2 * NODE_HEIGHT;
-        int numOfChildren = root.getNumOfChildren();
-        if (numOfChildren > 0) {
-            double branchesGap = numOfChildren * (NODE_WIDTH + NODE_GAP) - NODE_GAP;
-            childX -= 0.5 * (branchesGap - NODE_WIDTH);
-            childX = ensureNotOverlapped(childX, childY);
-        } else {
-            childX += 2 * NODE_WIDTH;
-        }
+        detail.track(root.getTree());
+        layout = TreeLayout.of(root, xPos, yPos, detail);
+        fitToLayout();
+        repaint();
+    }
 
-        // add children tress
-        SyntaxTreeNode[] children = root.getChildren();
-        for (int i = 0; i < root.getNumOfChildren(); i++) {
-            double linkXStart = xPos + 0.5 * NODE_WIDTH;
-            double linkYStart = yPos + NODE_HEIGHT;
-            SyntaxTreeNode child = children[i];
+    private void fitToLayout() {
+        this.setMinWidth(layout.getWidth() * scale);
+        this.setMinHeight(layout.getHeight() * scale);
+    }
 
-            Line line = new Line(linkXStart, linkYStart, childX + 0.5 * NODE_WIDTH, childY);
-            this.getChildren().add(line);
+    private void zoom(ScrollEvent event) {
+        if (!event.isControlDown() || layout == null || event.getDeltaY() == 0)
+            return;
 
-            drawTree(child, childX, childY);
-            childX += SyntaxTreeNode.getLevelWidth(child) * (NODE_WIDTH + NODE_GAP);
+        double factor = event.getDeltaY() > 0 ? ZOOM_STEP : 1 / ZOOM_STEP;
+        scale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, scale * factor));
+        event.consume();
+        if (detail.zoomTo(scale) && relayoutHandler != null) {
+            relayoutHandler.run();
+        } else {
+            fitToLayout();
+            repaint();
         }
+    }
 
-        // determine next tree coordinates
-        double siblingX = childX + NODE_GAP;
-        double siblingLinkY = yPos + 0.5 * NODE_HEIGHT;
+    private void expand(MouseEvent event) {
+        if (layout == null || relayoutHandler == null)
+            return;
 
-        // add next tree
-        SyntaxTreeNode siblingTree = root.getNextSameLevelNode();
-        drawTree(siblingTree, siblingX, yPos);
-        if (siblingTree != null) {
-            Line line = new Line(xPos + NODE_WIDTH, siblingLinkY, siblingX, siblingLinkY);
-            this.getChildren().add(line);
-        }
+        int node = layout.nodeAt(event.getX() / scale, event.getY() / scale);
+        if (node == TreeLayout.NONE || layout.getHiddenCount(node) == 0)
+            return;
 
-        // adjust pane size
-        double boundX = siblingX + SyntaxTreeNode.getLevelWidth(siblingTree) * (NODE_WIDTH + NODE_GAP);
-        adjustBounds(boundX, childY);
+        if (layout.isContinuation(node)) {
+            detail.continueFrom(layout.getSource(node));
+        } else {
+            detail.expand(layout.getSource(node));
+        }
+        relayoutHandler.run();
     }
 
-    private void addNode(SyntaxTreeNode node, double xPos, double yPos) {
-        Color strokePaint;
-        if (node.isExpression()) {
-            strokePaint = Color.rgb(102, 21, 19);
-            addEllipse(xPos, yPos, strokePaint);
-        } else {
-            strokePaint = Color.rgb(48, 89, 164);
-            addRectangle(xPos, yPos, strokePaint);
+    private void repaint() {
+        double viewX = 0;
+        double viewY = 0;
+        double viewWidth = this.getWidth();
+        double viewHeight = this.getHeight();
+        if (scrollPane != null) {
+            Bounds viewport = scrollPane.getViewportBounds();
+            viewWidth = viewport.getWidth();
+            viewHeight = viewport.getHeight();
+            viewX = scrollOffset(scrollPane.getHvalue(), scrollPane.getHmin(), scrollPane.getHmax(),
+                    this.getWidth() - viewWidth);
+            viewY = scrollOffset(scrollPane.getVvalue(), scrollPane.getVmin(), scrollPane.getVmax(),
+                    this.getHeight() - viewHeight);
         }
 
-        addTextOnNode(xPos, yPos+15, node.getLabel(), strokePaint);
-        if (node.getValue() != null)
-            addTextOnNode(xPos, yPos+30, "("+node.getValue()+")", strokePaint);
-    }
+        canvas.relocate(viewX, viewY);
+        canvas.setWidth(viewWidth);
+        canvas.setHeight(viewHeight);
 
-    private void addEllipse(double xPos, double yPos, Color strokePaint) {
-        double centerX = xPos + 0.5*NODE_WIDTH;
-        double centerY = yPos + 0.5*NODE_HEIGHT;
+        GraphicsContext g = canvas.getGraphicsContext2D();
+        g.clearRect(0, 0, viewWidth, viewHeight);
+        if (layout == null)
+            return;
+
+        g.save();
+        g.translate(-viewX, -viewY);
+        g.scale(scale, scale);
+        g.setTextAlign(TextAlignment.CENTER);
+        g.setTextBaseline(VPos.BASELINE);
+        paint(g, viewX / scale, viewY / scale,
+                (viewX + viewWidth) / scale, (viewY + viewHeight) / scale);
+        g.restore();
+    }
 
-        Ellipse ellipse = new Ellipse(centerX, centerY, 0.5*NODE_WIDTH, 0.5*NODE_HEIGHT);
-        ellipse.setStroke(strokePaint);
-        ellipse.setFill(Color.TRANSPARENT);
-        this.getChildren().add(ellipse);
+    private static double scrollOffset(double value, double min, double max, double extra) {
+        if (extra <= 0 || max <= min)
+            return 0;
+        return (value - min) / (max - min) * extra;
     }
 
-    private void addRectangle(double xPos, double yPos, Color strokePaint) {
-        Rectangle rectangle = new Rectangle(xPos, yPos, NODE_WIDTH, NODE_HEIGHT);
+    private void paint(GraphicsContext g, double left, double top, double right, double bottom) {
+        boolean withText = scale >= MIN_TEXT_SCALE;
+        layout.forEachInArea(left, top, right, bottom, node -> {
+            double x = layout.getX(node);
+            double y = layout.getY(node);
 
-        rectangle.setStroke(strokePaint);
-        rectangle.setFill(Color.TRANSPARENT);
-        this.getChildren().add(rectangle);
+            int from = layout.getLink(node);
+            if (from != TreeLayout.NONE)
+                paintLink(g, from, node, left, top, right, bottom);
+
+            if (x + NODE_WIDTH >= left && x <= right && y + NODE_HEIGHT >= top && y <= bottom)
+                paintNode(g, node, x, y, withText);
+        });
     }
 
-    private void addTextOnNode(double xPos, double yPos, String text, Color strokePaint) {
-        Text textObj = new Text(text);
-        double labelXPos = xPos +
-                0.5 * (NODE_WIDTH-textObj.getLayoutBounds().getWidth());
+    private void paintLink(GraphicsContext g, int from, int to,
+                           double left, double top, double right, double bottom) {
+        double x1, y1, x2, y2;
+        if (layout.isNextLink(to)) {
+            x1 = layout.getX(from) + NODE_WIDTH;
+            y1 = layout.getY(from) + 0.5 * NODE_HEIGHT;
+            x2 = layout.getX(to);
+            y2 = y1;
+        } else {
+            x1 = layout.getX(from) + 0.5 * NODE_WIDTH;
+            y1 = layout.getY(from) + NODE_HEIGHT;
+            x2 = layout.getX(to) + 0.5 * NODE_WIDTH;
+            y2 = layout.getY(to);
+        }
+
+        if (Math.max(x1, x2) < left || Math.min(x1, x2) > right ||
+                Math.max(y1, y2) < top || Math.min(y1, y2) > bottom)
+            return;
 
-        textObj.setX(labelXPos);
-        textObj.setY(yPos);
-        textObj.setStroke(strokePaint);
-        this.getChildren().add(textObj);
+        g.setStroke(Color.BLACK);
+        g.strokeLine(x1, y1, x2, y2);
     }
 
-    private void adjustBounds(double x, double y) {
-        if (x > this.getWidth()) {
-            double delta = x- this.getWidth();
-            this.setMinWidth(this.getWidth() + delta);
+    private void paintNode(GraphicsContext g, int node, double x, double y, boolean withText) {
+        if (layout.isContinuation(node)) {
+            paintContinuation(g, node, x, y, withText);
+            return;
         }
 
-        if (y > this.getHeight()) {
-            double delta = y- this.getHeight();
-            this.setMinHeight(this.getHeight() + delta);
+        Color strokePaint;
+        if (layout.getKind(node).isExpression()) {
+            strokePaint = EXPRESSION_COLOR;
+            g.setStroke(strokePaint);
+            g.strokeOval(x, y, NODE_WIDTH, NODE_HEIGHT);
+        } else {
+            strokePaint = STATEMENT_COLOR;
+            g.setStroke(strokePaint);
+            g.strokeRect(x, y, NODE_WIDTH, NODE_HEIGHT);
         }
-    }
 
-    private double ensureNotOverlapped(double x, double y) {
-        for (Node node: this.getChildren()) {
-            Shape shape;
-            if (node instanceof Shape) {
-                shape = (Shape) node;
-            } else {
-                continue;
-            }
-
-            if (x < 0)
-                return NODE_GAP;
-            if (shape.intersects(x, y, NODE_WIDTH, NODE_HEIGHT)) {
-                if (shape instanceof Rectangle) {
-                    Rectangle rect = (Rectangle) shape;
-                    return rect.getX() + rect.getWidth() + NODE_GAP;
-                } else if (shape instanceof Ellipse) {
-                    Ellipse ellipse = (Ellipse) shape;
-                    return ellipse.getCenterX() + ellipse.getRadiusX() + NODE_GAP;
-                } else {
-                    return x + NODE_GAP;
-                }
-            }
+        if (!withText)
+            return;
+
+        g.setFill(strokePaint);
+        g.fillText(layout.getKind(node).getLabel(), x + 0.5 * NODE_WIDTH, y + 15);
+        String value = layout.getValue(node);
+        if (value != null)
+            g.fillText("(" + value + ")", x + 0.5 * NODE_WIDTH, y + 30);
+
+        // a collapsed subtree shows how many nodes it hides
+        int hiddenCount = layout.getHiddenCount(node);
+        if (hiddenCount > 0) {
+            g.setFill(PLACEHOLDER_COLOR);
+            g.fillText("+" + hiddenCount, x + 0.5 * NODE_WIDTH, y + NODE_HEIGHT + 15);
         }
-        return x;
+    }
+
+    private void paintContinuation(GraphicsContext g, int node, double x, double y, boolean withText) {
+        g.setStroke(PLACEHOLDER_COLOR);
+        g.setLineDashes(4);
+        g.strokeRect(x, y, NODE_WIDTH, NODE_HEIGHT);
+        g.setLineDashes(null);
+
+        if (!withText)
+            return;
+
+        g.setFill(PLACEHOLDER_COLOR);
+        g.fillText("...", x + 0.5 * NODE_WIDTH, y + 15);
+        g.fillText("+" + layout.getHiddenCount(node), x + 0.5 * NODE_WIDTH, y + 30);
     }
 
     void clearPane(Label label) {
-        this.getChildren().clear();
-        this.getChildren().add(label);
+        layout = null;
+        this.getChildren().setAll(canvas, label);
+        repaint();
     }
 }
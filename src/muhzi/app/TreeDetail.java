@@ -0,0 +1,70 @@
+package muhzi.app;
+
+import muhzi.parser.SyntaxTree;
+
+import java.util.BitSet;
+
+final class TreeDetail {
+    /*
+    * Level of detail of the drawn tree. Rows are opened breadth first
+    * until the depth limit or the node budget is reached, the nodes left
+    * closed are drawn as placeholders with the size of their subtree.
+    * Long stmt-sequences only show a run of statements followed by a
+    * placeholder for the rest.
+    *
+    * Clicking a placeholder opens it for good: expanded nodes always show
+    * their children and continued statements start a new run. The state
+    * is kept by node index, so it survives edits that update the tree in
+    * place and is dropped when a new tree comes in.
+    */
+
+    static final int NODE_BUDGET = 20000;
+    static final int RUN_LIMIT = 200;
+    static final int MAX_DEPTH = 10;
+    static final int MIN_DEPTH = 2;
+
+    private final BitSet expanded = new BitSet();
+    private final BitSet continued = new BitSet();
+    private SyntaxTree tree;
+    private int depthLimit = MAX_DEPTH;
+
+    void track(SyntaxTree syntaxTree) {
+        if (tree != syntaxTree) {
+            tree = syntaxTree;
+            expanded.clear();
+            continued.clear();
+        }
+    }
+
+    /*
+    * Fewer rows are opened as the tree is zoomed out, returns whether the
+    * limit changed.
+    */
+    boolean zoomTo(double scale) {
+        int limit = Math.max(MIN_DEPTH, (int) Math.round(MAX_DEPTH * Math.min(1, scale)));
+        if (limit == depthLimit)
+            return false;
+        depthLimit = limit;
+        return true;
+    }
+
+    int getDepthLimit() {
+        return depthLimit;
+    }
+
+    boolean isExpanded(int node) {
+        return expanded.get(node);
+    }
+
+    void expand(int node) {
+        expanded.set(node);
+    }
+
+    boolean isContinued(int statement) {
+        return continued.get(statement);
+    }
+
+    void continueFrom(int statement) {
+        continued.set(statement);
+    }
+}
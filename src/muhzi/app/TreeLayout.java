@@ -0,0 +1,669 @@
+package muhzi.app;
+
+import muhzi.parser.NodeKind;
+import muhzi.parser.SyntaxTree;
+import muhzi.parser.SyntaxTreeNode;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntConsumer;
+
+final class TreeLayout {
+    /*
+    * Where every node of a syntax tree goes when drawn, computed without
+    * any scene graph. Children hang one row below their parent and the
+    * statements of a stmt-sequence follow each other on the same row, so
+    * for layout purposes a sequence is a run of siblings under the node
+    * that owns it (or under an implicit root for the program).
+    *
+    * Positions come from Walker's tidy tree algorithm with Buchheim's
+    * linear time refinements: subtrees are placed as close as their
+    * contours allow and parents are centered over their children. Every
+    * pass is iterative.
+    *
+    * Only the part of the tree opened by a TreeDetail is laid out, closed
+    * subtrees and the cut off end of long stmt-sequences get placeholder
+    * nodes. What a placeholder hides comes from the counts the tree keeps
+    * up to date through edits, a closed subtree is only counted the first
+    * time it is laid out and a sequence only walked to its end once, so
+    * laying out again, to zoom, open more or after an edit, costs the part
+    * that is opened.
+    *
+    * The layout is a snapshot: it copies the labels it needs, so it stays
+    * valid when the tree it was made from is changed. Nodes are numbered
+    * in pre-order, the root being 0. Rows keep their nodes in left to
+    * right order, which is what the viewport and hit queries search.
+    */
+
+    static final double NODE_WIDTH = 60;
+    static final double NODE_HEIGHT = 40;
+    static final double NODE_GAP = 15;
+    static final double ROW_HEIGHT = 2 * NODE_HEIGHT;
+
+    static final int NONE = -1;
+
+    private static final double DISTANCE = NODE_WIDTH + NODE_GAP;
+
+    private int size;
+    private double[] x = new double[64];
+    private int[] row = new int[64];
+    private NodeKind[] kind = new NodeKind[64];
+    private String[] value = new String[64];
+    private int[] link = new int[64];
+    private boolean[] nextLink = new boolean[64];
+    private int[] source = new int[64];
+    private int[] hidden = new int[64];
+    private boolean[] continuation = new boolean[64];
+    private int lastTopLevel = NONE;
+
+    // layout tree, the implicit root is node size
+    private int[] parent = new int[64];
+    private int[] firstChild = new int[64];
+    private int[] lastChild = new int[64];
+    private int[] nextSibling = new int[64];
+
+    private double left;
+    private double top;
+    private double width;
+    private double height;
+
+    // nodes by row then x, with the reach of each node and its link
+    private int[] rowStart;
+    private int[] rowNodes;
+    private double[] reachRightBefore;
+    private double[] reachLeftAfter;
+
+    // display children of the node being visited, statements of a
+    // sequence past the first follow the previous one, a complemented
+    // entry stands for the rest of a sequence that is cut off, cutOff
+    // holding the number of statements it hides
+    private int[] children = new int[16];
+    private boolean[] follows = new boolean[16];
+    private int[] cutOff = new int[16];
+    private int numOfChildren;
+
+    private TreeLayout() {
+    }
+
+    static TreeLayout of(SyntaxTreeNode root, double xPos, double yPos, TreeDetail detail) {
+        TreeLayout layout = new TreeLayout();
+        layout.left = xPos;
+        layout.top = yPos;
+        if (root != null) {
+            SyntaxTree tree = root.getTree();
+            layout.collect(tree, root.getIndex(), layout.open(tree, root.getIndex(), detail), detail);
+        }
+        layout.children = null;
+        layout.follows = null;
+        layout.cutOff = null;
+        layout.place();
+        layout.index();
+        return layout;
+    }
+
+    private void appendChild(int entry, boolean follow) {
+        if (numOfChildren == children.length) {
+            children = Arrays.copyOf(children, 2 * numOfChildren);
+            follows = Arrays.copyOf(follows, 2 * numOfChildren);
+            cutOff = Arrays.copyOf(cutOff, 2 * numOfChildren);
+        }
+        children[numOfChildren] = entry;
+        follows[numOfChildren++] = follow;
+    }
+
+    private void appendRun(SyntaxTree tree, int head, TreeDetail detail) {
+        int run = 0;
+        int index = 0;
+        for (int statement = head; statement != SyntaxTree.NONE; statement = tree.getNext(statement)) {
+            if (detail.isContinued(statement)) {
+                run = 0;
+            } else if (run == TreeDetail.RUN_LIMIT) {
+                appendChild(~statement, true);
+                cutOff[numOfChildren - 1] = tree.getSequenceLength(head) - index;
+                return;
+            }
+            appendChild(statement, statement != head);
+            run++;
+            index++;
+        }
+    }
+
+    private void displayChildren(SyntaxTree tree, int node, TreeDetail detail) {
+        numOfChildren = 0;
+        for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+            if (tree.getKind(child).isExpression()) {
+                appendChild(child, false);
+            } else {
+                appendRun(tree, child, detail);
+            }
+        }
+    }
+
+    /*
+    * Decides which nodes show their children, breadth first so the budget
+    * is spent on the top rows. Nodes expanded by the user are always open.
+    */
+    private BitSet open(SyntaxTree tree, int root, TreeDetail detail) {
+        BitSet open = new BitSet();
+        int[] queue = new int[64];
+        int[] depth = new int[64];
+        int head = 0;
+        int tail = 0;
+
+        numOfChildren = 0;
+        appendRun(tree, root, detail);
+        int used = numOfChildren;
+        int rowDepth = 0;
+        for (;;) {
+            for (int i = 0; i < numOfChildren; i++) {
+                if (children[i] < 0)
+                    continue;
+                if (tail == queue.length) {
+                    queue = Arrays.copyOf(queue, 2 * tail);
+                    depth = Arrays.copyOf(depth, 2 * tail);
+                }
+                queue[tail] = children[i];
+                depth[tail++] = rowDepth;
+            }
+
+            int node = NONE;
+            while (head < tail && node == NONE) {
+                int candidate = queue[head];
+                rowDepth = depth[head++] + 1;
+                if (tree.getFirstChild(candidate) == SyntaxTree.NONE)
+                    continue;
+
+                displayChildren(tree, candidate, detail);
+                if (detail.isExpanded(candidate) ||
+                        (rowDepth < detail.getDepthLimit() && used + numOfChildren <= TreeDetail.NODE_BUDGET))
+                    node = candidate;
+            }
+            if (node == NONE)
+                return open;
+
+            open.set(node);
+            used += numOfChildren;
+        }
+    }
+
+    /*
+    * Copies the open part of the tree in pre-order and builds the layout
+    * tree, in which every statement of a stmt-sequence is a child of the
+    * sequence owner.
+    */
+    private void collect(SyntaxTree tree, int root, BitSet open, TreeDetail detail) {
+        // pending entries: display child, owner it goes under, whether it
+        // follows the previous statement and the statements a cut hides
+        int[] stack = new int[64];
+        int top = 0;
+        numOfChildren = 0;
+        appendRun(tree, root, detail);
+        for (;;) {
+            if (top + 4 * numOfChildren > stack.length)
+                stack = Arrays.copyOf(stack, 2 * stack.length + 4 * numOfChildren);
+            int owner = size == 0 ? NONE : size - 1;
+            for (int i = numOfChildren - 1; i >= 0; i--) {
+                stack[top++] = children[i];
+                stack[top++] = owner;
+                stack[top++] = follows[i] ? 1 : 0;
+                stack[top++] = cutOff[i];
+            }
+            numOfChildren = 0;
+            if (top == 0)
+                return;
+
+            int statements = stack[--top];
+            boolean follow = stack[--top] != 0;
+            owner = stack[--top];
+            int entry = stack[--top];
+            int linkedFrom = follow ? (owner == NONE ? lastTopLevel : lastChild[owner]) : owner;
+            if (entry < 0) {
+                int placed = add(null, null, owner, linkedFrom, true);
+                source[placed] = ~entry;
+                hidden[placed] = statements;
+                continuation[placed] = true;
+                continue;
+            }
+
+            int placed = add(tree.getKind(entry), tree.getValue(entry), owner, linkedFrom, follow);
+            source[placed] = entry;
+            if (open.get(entry)) {
+                displayChildren(tree, entry, detail);
+            } else if (tree.getFirstChild(entry) != SyntaxTree.NONE) {
+                hidden[placed] = tree.getCountedSubtreeSize(entry) - 1;
+            }
+        }
+    }
+
+    private int add(NodeKind nodeKind, String nodeValue, int owner, int linkedFrom, boolean next) {
+        if (size + 1 >= x.length)
+            grow();
+
+        int node = size++;
+        kind[node] = nodeKind;
+        value[node] = nodeValue;
+        link[node] = linkedFrom;
+        nextLink[node] = next;
+        source[node] = NONE;
+        hidden[node] = 0;
+        continuation[node] = false;
+        parent[node] = owner;
+        row[node] = owner == NONE ? 0 : row[owner] + 1;
+        firstChild[node] = NONE;
+        lastChild[node] = NONE;
+        nextSibling[node] = NONE;
+
+        if (owner != NONE) {
+            if (lastChild[owner] == NONE) {
+                firstChild[owner] = node;
+            } else {
+                nextSibling[lastChild[owner]] = node;
+            }
+            lastChild[owner] = node;
+        } else {
+            lastTopLevel = node;
+        }
+        return node;
+    }
+
+    private void grow() {
+        int capacity = 2 * x.length;
+        x = Arrays.copyOf(x, capacity);
+        row = Arrays.copyOf(row, capacity);
+        kind = Arrays.copyOf(kind, capacity);
+        value = Arrays.copyOf(value, capacity);
+        link = Arrays.copyOf(link, capacity);
+        nextLink = Arrays.copyOf(nextLink, capacity);
+        source = Arrays.copyOf(source, capacity);
+        hidden = Arrays.copyOf(hidden, capacity);
+        continuation = Arrays.copyOf(continuation, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        lastChild = Arrays.copyOf(lastChild, capacity);
+        nextSibling = Arrays.copyOf(nextSibling, capacity);
+    }
+
+    /*
+    * Walker's algorithm as refined by Buchheim, Junger and Leipert. The
+    * first walk is a left to right post-order pass computing preliminary
+    * positions and apportioning every subtree against its left siblings
+    * as soon as it is done. The second walk sums up the modifiers.
+    */
+    private void place() {
+        int n = size + 1;
+        int root = size;
+        firstChild[root] = NONE;
+        lastChild[root] = NONE;
+        nextSibling[root] = NONE;
+        parent[root] = NONE;
+        for (int node = 0; node < size; node++) {
+            if (parent[node] == NONE) {
+                parent[node] = root;
+                if (lastChild[root] == NONE) {
+                    firstChild[root] = node;
+                } else {
+                    nextSibling[lastChild[root]] = node;
+                }
+                lastChild[root] = node;
+            }
+        }
+
+        double[] prelim = new double[n];
+        double[] mod = new double[n];
+        double[] shift = new double[n];
+        double[] change = new double[n];
+        int[] thread = new int[n];
+        int[] ancestor = new int[n];
+        int[] number = new int[n];
+        int[] leftSibling = new int[n];
+        int[] defaultAncestor = new int[n];
+        Arrays.fill(thread, NONE);
+        for (int node = 0; node < n; node++) {
+            ancestor[node] = node;
+            defaultAncestor[node] = firstChild[node];
+            int previous = NONE;
+            int count = 0;
+            for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+                leftSibling[child] = previous;
+                number[child] = count++;
+                previous = child;
+            }
+        }
+        leftSibling[root] = NONE;
+
+        Walk walk = new Walk(prelim, mod, shift, change, thread, ancestor, number, leftSibling);
+        int[] stack = new int[16];
+        int[] cursor = new int[n];
+        int depth = 0;
+        stack[depth++] = root;
+        cursor[root] = firstChild[root];
+        while (depth > 0) {
+            int v = stack[depth - 1];
+            int child = cursor[v];
+            if (child != NONE) {
+                cursor[v] = nextSibling[child];
+                if (depth == stack.length)
+                    stack = Arrays.copyOf(stack, 2 * depth);
+                stack[depth++] = child;
+                cursor[child] = firstChild[child];
+                continue;
+            }
+
+            depth--;
+            walk.finish(v);
+            if (parent[v] != NONE)
+                defaultAncestor[parent[v]] = walk.apportion(v, defaultAncestor[parent[v]]);
+        }
+
+        // second walk, pre-order with the sum of the ancestors' modifiers
+        double[] modSum = new double[stack.length];
+        double minX = Double.POSITIVE_INFINITY;
+        depth = 0;
+        stack[depth] = root;
+        modSum[depth++] = 0;
+        while (depth > 0) {
+            int v = stack[--depth];
+            double m = modSum[depth];
+            if (v != root) {
+                x[v] = prelim[v] + m;
+                minX = Math.min(minX, x[v]);
+            }
+            for (int child = firstChild[v]; child != NONE; child = nextSibling[child]) {
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, 2 * depth);
+                    modSum = Arrays.copyOf(modSum, 2 * depth);
+                }
+                stack[depth] = child;
+                modSum[depth++] = m + mod[v];
+            }
+        }
+
+        int rows = 0;
+        for (int node = 0; node < size; node++) {
+            x[node] += left - minX;
+            width = Math.max(width, x[node] + NODE_WIDTH + NODE_GAP);
+            rows = Math.max(rows, row[node] + 1);
+        }
+        height = top + rows * ROW_HEIGHT;
+    }
+
+    private final class Walk {
+        private final double[] prelim;
+        private final double[] mod;
+        private final double[] shift;
+        private final double[] change;
+        private final int[] thread;
+        private final int[] ancestor;
+        private final int[] number;
+        private final int[] leftSibling;
+
+        private Walk(double[] prelim, double[] mod, double[] shift, double[] change,
+                     int[] thread, int[] ancestor, int[] number, int[] leftSibling) {
+            this.prelim = prelim;
+            this.mod = mod;
+            this.shift = shift;
+            this.change = change;
+            this.thread = thread;
+            this.ancestor = ancestor;
+            this.number = number;
+            this.leftSibling = leftSibling;
+        }
+
+        private void finish(int v) {
+            int w = leftSibling[v];
+            if (firstChild[v] == NONE) {
+                prelim[v] = w == NONE ? 0 : prelim[w] + DISTANCE;
+                return;
+            }
+
+            executeShifts(v);
+            double midpoint = 0.5 * (prelim[firstChild[v]] + prelim[lastChild[v]]);
+            if (w == NONE) {
+                prelim[v] = midpoint;
+            } else {
+                prelim[v] = prelim[w] + DISTANCE;
+                mod[v] = prelim[v] - midpoint;
+            }
+        }
+
+        private int apportion(int v, int defaultAncestor) {
+            int w = leftSibling[v];
+            if (w == NONE)
+                return defaultAncestor;
+
+            int vip = v;
+            int vop = v;
+            int vim = w;
+            int vom = firstChild[parent[v]];
+            double sip = mod[vip];
+            double sop = mod[vop];
+            double sim = mod[vim];
+            double som = mod[vom];
+            while (nextRight(vim) != NONE && nextLeft(vip) != NONE) {
+                vim = nextRight(vim);
+                vip = nextLeft(vip);
+                vom = nextLeft(vom);
+                vop = nextRight(vop);
+                ancestor[vop] = v;
+                double distance = (prelim[vim] + sim) - (prelim[vip] + sip) + DISTANCE;
+                if (distance > 0) {
+                    int a = parent[ancestor[vim]] == parent[v] ? ancestor[vim] : defaultAncestor;
+                    moveSubtree(a, v, distance);
+                    sip += distance;
+                    sop += distance;
+                }
+                sim += mod[vim];
+                sip += mod[vip];
+                som += mod[vom];
+                sop += mod[vop];
+            }
+
+            if (nextRight(vim) != NONE && nextRight(vop) == NONE) {
+                thread[vop] = nextRight(vim);
+                mod[vop] += sim - sop;
+            }
+            if (nextLeft(vip) != NONE && nextLeft(vom) == NONE) {
+                thread[vom] = nextLeft(vip);
+                mod[vom] += sip - som;
+                defaultAncestor = v;
+            }
+            return defaultAncestor;
+        }
+
+        private int nextLeft(int v) {
+            return firstChild[v] != NONE ? firstChild[v] : thread[v];
+        }
+
+        private int nextRight(int v) {
+            return lastChild[v] != NONE ? lastChild[v] : thread[v];
+        }
+
+        private void moveSubtree(int wm, int wp, double distance) {
+            double subtrees = number[wp] - number[wm];
+            change[wp] -= distance / subtrees;
+            shift[wp] += distance;
+            change[wm] += distance / subtrees;
+            prelim[wp] += distance;
+            mod[wp] += distance;
+        }
+
+        private void executeShifts(int v) {
+            double totalShift = 0;
+            double totalChange = 0;
+            for (int w = lastChild[v]; w != NONE; w = leftSibling[w]) {
+                prelim[w] += totalShift;
+                mod[w] += totalShift;
+                totalChange += change[w];
+                totalShift += shift[w] + totalChange;
+            }
+        }
+    }
+
+    /*
+    * Sorts the nodes by row, pre-order already keeps each row left to
+    * right, and records for every position how far right the entries
+    * before it reach and how far left the entries after it reach. An
+    * entry covers a node and the link drawn to it.
+    */
+    private void index() {
+        int rows = 0;
+        for (int node = 0; node < size; node++) {
+            rows = Math.max(rows, row[node] + 1);
+        }
+
+        rowStart = new int[rows + 1];
+        for (int node = 0; node < size; node++) {
+            rowStart[row[node] + 1]++;
+        }
+        for (int r = 0; r < rows; r++) {
+            rowStart[r + 1] += rowStart[r];
+        }
+
+        rowNodes = new int[size];
+        int[] fill = Arrays.copyOf(rowStart, rows);
+        for (int node = 0; node < size; node++) {
+            rowNodes[fill[row[node]]++] = node;
+        }
+
+        reachRightBefore = new double[size];
+        reachLeftAfter = new double[size];
+        for (int r = 0; r < rows; r++) {
+            double reach = Double.NEGATIVE_INFINITY;
+            for (int i = rowStart[r]; i < rowStart[r + 1]; i++) {
+                int node = rowNodes[i];
+                reach = Math.max(reach, Math.max(x[node] + NODE_WIDTH, linkRight(node)));
+                reachRightBefore[i] = reach;
+            }
+            reach = Double.POSITIVE_INFINITY;
+            for (int i = rowStart[r + 1] - 1; i >= rowStart[r]; i--) {
+                int node = rowNodes[i];
+                reach = Math.min(reach, Math.min(x[node], linkLeft(node)));
+                reachLeftAfter[i] = reach;
+            }
+        }
+    }
+
+    private double linkLeft(int node) {
+        if (link[node] == NONE)
+            return x[node];
+        return nextLink[node] ? x[link[node]] + NODE_WIDTH : Math.min(x[link[node]], x[node]) + 0.5 * NODE_WIDTH;
+    }
+
+    private double linkRight(int node) {
+        if (link[node] == NONE)
+            return x[node];
+        return nextLink[node] ? x[node] : Math.max(x[link[node]], x[node]) + 0.5 * NODE_WIDTH;
+    }
+
+    /*
+    * Calls action with every node that, or whose link, may intersect the
+    * given area. The rows crossing the area are searched for the first
+    * entry reaching into it and scanned until no later entry can.
+    */
+    void forEachInArea(double areaLeft, double areaTop, double areaRight, double areaBottom,
+                       IntConsumer action) {
+        int rows = rowStart.length - 1;
+        // a row covers its nodes and the links coming down from the row above
+        int firstRow = Math.max(0, (int) Math.ceil((areaTop - NODE_HEIGHT - top) / ROW_HEIGHT));
+        int lastRow = Math.min(rows - 1, (int) Math.floor((areaBottom + NODE_HEIGHT - top) / ROW_HEIGHT));
+        for (int r = firstRow; r <= lastRow; r++) {
+            int lo = rowStart[r];
+            int hi = rowStart[r + 1];
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (reachRightBefore[mid] < areaLeft) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            for (int i = lo; i < rowStart[r + 1] && reachLeftAfter[i] <= areaRight; i++) {
+                action.accept(rowNodes[i]);
+            }
+        }
+    }
+
+    /*
+    * Returns the node drawn at the given point, NONE when there is none.
+    */
+    int nodeAt(double pointX, double pointY) {
+        int r = (int) Math.floor((pointY - top) / ROW_HEIGHT);
+        if (r < 0 || r >= rowStart.length - 1 || pointY - top - r * ROW_HEIGHT > NODE_HEIGHT)
+            return NONE;
+
+        // within a row nodes do not overlap and are sorted by x
+        int lo = rowStart[r];
+        int hi = rowStart[r + 1];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (x[rowNodes[mid]] + NODE_WIDTH < pointX) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        if (lo < rowStart[r + 1] && x[rowNodes[lo]] <= pointX)
+            return rowNodes[lo];
+        return NONE;
+    }
+
+    int size() {
+        return size;
+    }
+
+    double getX(int node) {
+        return x[node];
+    }
+
+    double getY(int node) {
+        return top + row[node] * ROW_HEIGHT;
+    }
+
+    NodeKind getKind(int node) {
+        return kind[node];
+    }
+
+    String getValue(int node) {
+        return value[node];
+    }
+
+    /*
+    * The tree node a layout node was made from, for a placeholder of the
+    * end of a stmt-sequence the first statement it hides.
+    */
+    int getSource(int node) {
+        return source[node];
+    }
+
+    /*
+    * Number of nodes hidden by a collapsed node, or of statements hidden
+    * by a continuation placeholder, 0 for a node shown in full.
+    */
+    int getHiddenCount(int node) {
+        return hidden[node];
+    }
+
+    boolean isContinuation(int node) {
+        return continuation[node];
+    }
+
+    /*
+    * The node this one is linked from, its parent or the statement it
+    * follows when isNextLink is set, NONE for the root.
+    */
+    int getLink(int node) {
+        return link[node];
+    }
+
+    boolean isNextLink(int node) {
+        return nextLink[node];
+    }
+
+    double getWidth() {
+        return width;
+    }
+
+    double getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,311 @@
+package muhzi.exec;
+
+import muhzi.parser.NodeKind;
+import muhzi.parser.SyntaxTree;
+import muhzi.parser.SyntaxTreeNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+public final class BytecodeCompiler {
+    /*
+    * Lowers a syntax tree to a Program. Identifiers and constants get a
+    * slot of the frame each before any code is emitted, so an operand is
+    * always a plain index and the interpreter never looks a name up.
+    *
+    * Expressions are evaluated into their destination directly, x := a + b
+    * is a single add into the slot of x, a variable or constant operand is
+    * used in place and only the inner operators of an expression need a
+    * temporary. Temporaries are allocated as a stack and reused as soon
+    * as the operator that consumes them is emitted. A condition that is a
+    * comparison becomes a single compare-and-jump. Chains of left-leaning
+    * operators, as the parser builds for a + b + c..., are walked without
+    * recursion so long expressions need no deep stack.
+    *
+    * Values are 32-bit ints, a comparison yields 1 or 0 and a condition
+    * holds when it is not 0.
+    */
+
+    private final SyntaxTree tree;
+    private int[] code = new int[64];
+    private int length;
+
+    private final HashMap<String, Integer> variables = new HashMap<>();
+    private final List<String> variableNames = new ArrayList<>();
+    private final HashMap<Integer, Integer> constants = new HashMap<>();
+    private final List<Integer> constantValues = new ArrayList<>();
+    private int[] positions = new int[12];
+    private int positionCount;
+
+    private int firstTemporary;
+    private int temporaries;
+    private int maxTemporaries;
+
+    private BytecodeCompiler(SyntaxTree tree) {
+        this.tree = tree;
+    }
+
+    /*
+    * Compiles the program whose first statement is root, a null root for
+    * an empty program. The tree must have parsed without errors. Only
+    * fails for a number that does not fit an int.
+    */
+    public static Program compile(SyntaxTreeNode root) {
+        if (root == null)
+            return new Program(new int[]{Opcodes.HALT}, new String[0], new int[0], 0, new int[0]);
+        return new BytecodeCompiler(root.getTree()).compileProgram(root.getIndex());
+    }
+
+    private Program compileProgram(int root) {
+        allocateSlots(root);
+        firstTemporary = variableNames.size() + constantValues.size();
+
+        compileStatements(root);
+        emit(Opcodes.HALT);
+
+        int[] constantArray = new int[constantValues.size()];
+        for (int i = 0; i < constantArray.length; i++) {
+            constantArray[i] = constantValues.get(i);
+        }
+        return new Program(Arrays.copyOf(code, length), variableNames.toArray(new String[0]),
+                constantArray, firstTemporary + maxTemporaries, Arrays.copyOf(positions, 3 * positionCount));
+    }
+
+    /*
+    * Gives every variable and distinct constant a slot, variables first,
+    * in the order they appear.
+    */
+    private void allocateSlots(int root) {
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            switch (tree.getKind(node)) {
+                case READ:
+                case ASSIGN:
+                case ID:
+                    variableSlot(tree.getValue(node));
+                    break;
+                case CONST:
+                    int value = parseConstant(node);
+                    if (!constants.containsKey(value)) {
+                        constants.put(value, constantValues.size());
+                        constantValues.add(value);
+                    }
+                    break;
+            }
+
+            int next = tree.getNext(node);
+            int childCount = tree.getNumOfChildren(node);
+            if (top + childCount + 1 > stack.length)
+                stack = Arrays.copyOf(stack, Math.max(2 * stack.length, top + childCount + 1));
+            if (next != SyntaxTree.NONE)
+                stack[top++] = next;
+            top += childCount;
+            int slot = top;
+            for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+                stack[--slot] = child;
+            }
+        }
+    }
+
+    private int variableSlot(String name) {
+        Integer slot = variables.get(name);
+        if (slot == null) {
+            slot = variableNames.size();
+            variables.put(name, slot);
+            variableNames.add(name);
+        }
+        return slot;
+    }
+
+    private int constantSlot(int node) {
+        return variableNames.size() + constants.get(parseConstant(node));
+    }
+
+    private int parseConstant(int node) {
+        try {
+            return Integer.parseInt(tree.getValue(node));
+        } catch (NumberFormatException e) {
+            throw new ExecutionError("Number out of range: " + tree.getValue(node),
+                    tree.getOffset(node), tree.getLine(node), tree.getColumn(node));
+        }
+    }
+
+    private void compileStatements(int first) {
+        for (int node = first; node != SyntaxTree.NONE; node = tree.getNext(node)) {
+            compileStatement(node);
+        }
+    }
+
+    private void compileStatement(int node) {
+        int first = tree.getFirstChild(node);
+        switch (tree.getKind(node)) {
+            case ASSIGN:
+                int variable = variableSlot(tree.getValue(node));
+                int value = compileExpression(first, variable);
+                if (value != variable)
+                    emit(Opcodes.MOVE, variable, value);
+                temporaries = 0;
+                break;
+            case READ:
+                emit(Opcodes.READ, variableSlot(tree.getValue(node)), position(node));
+                break;
+            case WRITE:
+                emit(Opcodes.WRITE, compileExpression(first, -1));
+                temporaries = 0;
+                break;
+            case IF:
+                int elseJump = compileJumpIfFalse(first);
+                int then = tree.getNextSibling(first);
+                int otherwise = tree.getNextSibling(then);
+                compileStatements(then);
+                if (otherwise == SyntaxTree.NONE) {
+                    patch(elseJump, length);
+                } else {
+                    emit(Opcodes.JUMP, 0);
+                    int endJump = length - 1;
+                    patch(elseJump, length);
+                    compileStatements(otherwise);
+                    patch(endJump, length);
+                }
+                break;
+            case REPEAT:
+                int start = length;
+                compileStatements(first);
+                patch(compileJumpIfFalse(tree.getNextSibling(first)), start);
+                break;
+            default:
+                throw new IllegalStateException("Not a statement: " + tree.getKind(node));
+        }
+    }
+
+    /*
+    * Emits a jump taken when the condition does not hold and returns the
+    * index of its target operand, to be patched.
+    */
+    private int compileJumpIfFalse(int condition) {
+        int opcode = Opcodes.JUMP_IF_ZERO;
+        if (tree.getKind(condition) == NodeKind.OP) {
+            String op = tree.getValue(condition);
+            if (op.equals("<")) {
+                opcode = Opcodes.JUMP_IF_NOT_LESS;
+            } else if (op.equals("=")) {
+                opcode = Opcodes.JUMP_IF_NOT_EQUAL;
+            }
+        }
+
+        if (opcode == Opcodes.JUMP_IF_ZERO) {
+            emit(opcode, compileExpression(condition, -1), 0);
+        } else {
+            int left = tree.getFirstChild(condition);
+            int a = compileExpression(left, -1);
+            int b = compileExpression(tree.getNextSibling(left), -1);
+            emit(opcode, a, b, 0);
+        }
+        temporaries = 0;
+        return length - 1;
+    }
+
+    /*
+    * Compiles an expression and returns the slot holding its value, which
+    * is target when one is given and an operator computes the value.
+    * Temporaries allocated for the value stay allocated.
+    */
+    private int compileExpression(int node, int target) {
+        if (tree.getKind(node) != NodeKind.OP)
+            return operandSlot(node);
+
+        // down the left operands to the first one that is not an operator
+        int[] spine = new int[8];
+        int depth = 0;
+        int leftmost = node;
+        while (tree.getKind(leftmost) == NodeKind.OP) {
+            if (depth == spine.length)
+                spine = Arrays.copyOf(spine, 2 * depth);
+            spine[depth++] = leftmost;
+            leftmost = tree.getFirstChild(leftmost);
+        }
+
+        int value = operandSlot(leftmost);
+        while (depth > 0) {
+            int op = spine[--depth];
+            int base = temporaries;
+            int right = compileExpression(tree.getNextSibling(tree.getFirstChild(op)), -1);
+            temporaries = base;
+
+            int destination;
+            if (depth == 0 && target >= 0) {
+                destination = target;
+            } else if (value >= firstTemporary) {
+                destination = value;
+            } else {
+                destination = allocateTemporary();
+            }
+            emitOperator(op, destination, value, right);
+            value = destination;
+        }
+        return value;
+    }
+
+    private int operandSlot(int node) {
+        if (tree.getKind(node) == NodeKind.CONST)
+            return constantSlot(node);
+        return variableSlot(tree.getValue(node));
+    }
+
+    private int allocateTemporary() {
+        int slot = firstTemporary + temporaries++;
+        maxTemporaries = Math.max(maxTemporaries, temporaries);
+        return slot;
+    }
+
+    private void emitOperator(int node, int d, int a, int b) {
+        switch (tree.getValue(node)) {
+            case "+":
+                emit(Opcodes.ADD, d, a, b);
+                break;
+            case "-":
+                emit(Opcodes.SUB, d, a, b);
+                break;
+            case "*":
+                emit(Opcodes.MUL, d, a, b);
+                break;
+            case "/":
+                emit(Opcodes.DIV, d, a, b, position(node));
+                break;
+            case "<":
+                emit(Opcodes.LESS, d, a, b);
+                break;
+            case "=":
+                emit(Opcodes.EQUAL, d, a, b);
+                break;
+            default:
+                throw new IllegalStateException("Unknown operator: " + tree.getValue(node));
+        }
+    }
+
+    private int position(int node) {
+        if (3 * positionCount + 3 > positions.length)
+            positions = Arrays.copyOf(positions, 2 * positions.length);
+        int i = 3 * positionCount;
+        positions[i] = tree.getOffset(node);
+        positions[i + 1] = tree.getLine(node);
+        positions[i + 2] = tree.getColumn(node);
+        return positionCount++;
+    }
+
+    private void patch(int operand, int target) {
+        code[operand] = target;
+    }
+
+    private void emit(int... instruction) {
+        if (length + instruction.length > code.length)
+            code = Arrays.copyOf(code, Math.max(2 * code.length, length + instruction.length));
+        System.arraycopy(instruction, 0, code, length, instruction.length);
+        length += instruction.length;
+    }
+}
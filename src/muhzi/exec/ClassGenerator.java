@@ -0,0 +1,433 @@
+package muhzi.exec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+final class ClassGenerator {
+    /*
+    * Writes the class file of a NativeCode subclass whose run method does
+    * what the register code of a Program does. Every instruction becomes
+    * a few JVM instructions in the same order: a variable or temporary
+    * slot is a local of the method, a constant slot an immediate, a jump
+    * a branch. HotSpot then allocates the locals to registers when it
+    * compiles the method.
+    *
+    * The class file is version 50, which needs no StackMapTable as the
+    * verifier infers the types of the locals itself. Division, read and
+    * write call the NativeContext passed to run, and so does every jump
+    * back to the start of a loop, to count iterations. Positions of errors
+    * are passed as the index the Program keeps them at, so the class only
+    * depends on the code and the constants of the program.
+    */
+
+    // HotSpot does not compile methods larger than this
+    static final int MAX_CODE_LENGTH = 8000;
+
+    static final String CLASS_NAME = "muhzi/exec/NativeCode$Program";
+
+    private static final String SUPER_NAME = "muhzi/exec/NativeCode";
+    private static final String CONTEXT_NAME = "muhzi/exec/NativeContext";
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC = 0x12;
+    private static final int LDC_W = 0x13;
+    private static final int ILOAD = 0x15;
+    private static final int ILOAD_0 = 0x1a;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int ISTORE = 0x36;
+    private static final int ISTORE_0 = 0x3b;
+    private static final int IASTORE = 0x4f;
+    private static final int DUP = 0x59;
+    private static final int IADD = 0x60;
+    private static final int ISUB = 0x64;
+    private static final int IMUL = 0x68;
+    private static final int IFEQ = 0x99;
+    private static final int IFNE = 0x9a;
+    private static final int IF_ICMPEQ = 0x9f;
+    private static final int IF_ICMPNE = 0xa0;
+    private static final int IF_ICMPLT = 0xa1;
+    private static final int IF_ICMPGE = 0xa2;
+    private static final int GOTO = 0xa7;
+    private static final int ARETURN = 0xb0;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int NEWARRAY = 0xbc;
+    private static final int WIDE = 0xc4;
+    private static final int T_INT = 10;
+
+    // locals 0 and 1 are this and the context
+    private static final int FIRST_LOCAL = 2;
+
+    private final Program program;
+    private final int[] code;
+    private final int variableCount;
+    private final int firstTemporary;
+
+    private final ConstantPool pool = new ConstantPool();
+    private byte[] out = new byte[256];
+    private int length;
+
+    // JVM offset of each register instruction, and the branches to patch
+    private final int[] offsets;
+    private int[] branches = new int[32];
+    private int branchCount;
+
+    private ClassGenerator(Program program) {
+        this.program = program;
+        this.code = program.code();
+        this.variableCount = program.getVariableCount();
+        this.firstTemporary = variableCount + program.constants().length;
+        this.offsets = new int[code.length + 1];
+    }
+
+    /*
+    * The class file for the program, null when its run method would be
+    * too large for HotSpot to compile.
+    */
+    static byte[] generate(Program program) {
+        return new ClassGenerator(program).generateClass();
+    }
+
+    private byte[] generateClass() {
+        generateRun();
+        if (length > MAX_CODE_LENGTH)
+            return null;
+
+        int thisClass = pool.classRef(CLASS_NAME);
+        int superClass = pool.classRef(SUPER_NAME);
+        int superInit = pool.methodRef(SUPER_NAME, "<init>", "()V");
+        int init = pool.utf8("<init>");
+        int initType = pool.utf8("()V");
+        int run = pool.utf8("run");
+        int runType = pool.utf8("(L" + CONTEXT_NAME + ";)[I");
+        int codeAttribute = pool.utf8("Code");
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(length + 512);
+            DataOutputStream data = new DataOutputStream(bytes);
+            data.writeInt(0xCAFEBABE);
+            data.writeShort(0);
+            data.writeShort(50);
+            pool.write(data);
+            data.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            data.writeShort(thisClass);
+            data.writeShort(superClass);
+            data.writeShort(0);
+            data.writeShort(0);
+
+            data.writeShort(2);
+            byte[] initCode = {
+                    (byte) ALOAD_0,
+                    (byte) INVOKESPECIAL, (byte) (superInit >> 8), (byte) superInit,
+                    (byte) RETURN
+            };
+            writeMethod(data, init, initType, codeAttribute, 1, 1, initCode, initCode.length);
+            writeMethod(data, run, runType, codeAttribute, 4, FIRST_LOCAL + program.frameSize(), out, length);
+
+            data.writeShort(0);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeMethod(DataOutputStream data, int name, int type, int codeAttribute,
+                                    int maxStack, int maxLocals, byte[] code, int codeLength) throws IOException {
+        data.writeShort(ACC_PUBLIC);
+        data.writeShort(name);
+        data.writeShort(type);
+        data.writeShort(1);
+        data.writeShort(codeAttribute);
+        data.writeInt(12 + codeLength);
+        data.writeShort(maxStack);
+        data.writeShort(maxLocals);
+        data.writeInt(codeLength);
+        data.write(code, 0, codeLength);
+        data.writeShort(0);
+        data.writeShort(0);
+    }
+
+    private void generateRun() {
+        // locals must be assigned before the verifier lets them be read
+        for (int slot = 0; slot < program.frameSize(); slot++) {
+            if (!isConstant(slot)) {
+                emit(ICONST_0);
+                store(slot);
+            }
+        }
+
+        int read = pool.methodRef(CONTEXT_NAME, "read", "(II)I");
+        int write = pool.methodRef(CONTEXT_NAME, "write", "(I)V");
+        int divide = pool.methodRef(CONTEXT_NAME, "divide", "(III)I");
+        int loop = pool.methodRef(CONTEXT_NAME, "loop", "()V");
+
+        for (int pc = 0; pc < code.length && length <= MAX_CODE_LENGTH; pc += Opcodes.length(code[pc])) {
+            offsets[pc] = length;
+            int a = pc + 1 < code.length ? code[pc + 1] : 0;
+            switch (code[pc]) {
+                case Opcodes.MOVE:
+                    load(code[pc + 2]);
+                    store(a);
+                    break;
+                case Opcodes.ADD:
+                case Opcodes.SUB:
+                case Opcodes.MUL:
+                    load(code[pc + 2]);
+                    load(code[pc + 3]);
+                    emit(code[pc] == Opcodes.ADD ? IADD : code[pc] == Opcodes.SUB ? ISUB : IMUL);
+                    store(a);
+                    break;
+                case Opcodes.DIV:
+                    emit(ALOAD_1);
+                    load(code[pc + 2]);
+                    load(code[pc + 3]);
+                    pushInt(code[pc + 4]);
+                    invoke(divide);
+                    store(a);
+                    break;
+                case Opcodes.LESS:
+                case Opcodes.EQUAL:
+                    // d = a < b ? 1 : 0
+                    load(code[pc + 2]);
+                    load(code[pc + 3]);
+                    emit(code[pc] == Opcodes.LESS ? IF_ICMPGE : IF_ICMPNE);
+                    emitShort(7);
+                    emit(ICONST_0 + 1);
+                    emit(GOTO);
+                    emitShort(4);
+                    emit(ICONST_0);
+                    store(a);
+                    break;
+                case Opcodes.JUMP:
+                    branch(GOTO, a);
+                    break;
+                case Opcodes.JUMP_IF_ZERO:
+                    load(a);
+                    conditionalJump(pc, IFEQ, IFNE, code[pc + 2], loop);
+                    break;
+                case Opcodes.JUMP_IF_NOT_LESS:
+                case Opcodes.JUMP_IF_NOT_EQUAL:
+                    load(a);
+                    load(code[pc + 2]);
+                    boolean less = code[pc] == Opcodes.JUMP_IF_NOT_LESS;
+                    conditionalJump(pc, less ? IF_ICMPGE : IF_ICMPNE, less ? IF_ICMPLT : IF_ICMPEQ, code[pc + 3], loop);
+                    break;
+                case Opcodes.READ:
+                    emit(ALOAD_1);
+                    pushInt(a);
+                    pushInt(code[pc + 2]);
+                    invoke(read);
+                    store(a);
+                    break;
+                case Opcodes.WRITE:
+                    emit(ALOAD_1);
+                    load(a);
+                    invoke(write);
+                    break;
+                case Opcodes.HALT:
+                    pushInt(variableCount);
+                    emit(NEWARRAY);
+                    emit(T_INT);
+                    for (int slot = 0; slot < variableCount; slot++) {
+                        emit(DUP);
+                        pushInt(slot);
+                        load(slot);
+                        emit(IASTORE);
+                    }
+                    emit(ARETURN);
+                    break;
+                default:
+                    throw new IllegalStateException("Invalid opcode " + code[pc] + " at " + pc);
+            }
+        }
+        offsets[code.length] = length;
+
+        for (int i = 0; i < branchCount; i += 2) {
+            int at = branches[i];
+            int delta = offsets[branches[i + 1]] - at;
+            out[at + 1] = (byte) (delta >> 8);
+            out[at + 2] = (byte) delta;
+        }
+    }
+
+    /*
+    * A jump forward is a plain branch. A jump back is taken by falling
+    * through the inverted branch into a call counting the iteration and
+    * a goto.
+    */
+    private void conditionalJump(int pc, int opcode, int inverted, int target, int loop) {
+        if (target > pc) {
+            branch(opcode, target);
+            return;
+        }
+        emit(inverted);
+        emitShort(10);
+        emit(ALOAD_1);
+        invoke(loop);
+        branch(GOTO, target);
+    }
+
+    private boolean isConstant(int slot) {
+        return slot >= variableCount && slot < firstTemporary;
+    }
+
+    private void load(int slot) {
+        if (isConstant(slot)) {
+            pushInt(program.constants()[slot - variableCount]);
+        } else {
+            local(ILOAD, ILOAD_0, FIRST_LOCAL + slot);
+        }
+    }
+
+    private void store(int slot) {
+        local(ISTORE, ISTORE_0, FIRST_LOCAL + slot);
+    }
+
+    private void local(int opcode, int shortOpcode, int index) {
+        if (index <= 3) {
+            emit(shortOpcode + index);
+        } else if (index <= 0xFF) {
+            emit(opcode);
+            emit(index);
+        } else {
+            emit(WIDE);
+            emit(opcode);
+            emitShort(index);
+        }
+    }
+
+    private void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            emit(ICONST_0 + value);
+        } else if (value == (byte) value) {
+            emit(BIPUSH);
+            emit(value);
+        } else if (value == (short) value) {
+            emit(SIPUSH);
+            emitShort(value);
+        } else {
+            int index = pool.integer(value);
+            if (index <= 0xFF) {
+                emit(LDC);
+                emit(index);
+            } else {
+                emit(LDC_W);
+                emitShort(index);
+            }
+        }
+    }
+
+    private void invoke(int methodRef) {
+        emit(INVOKEVIRTUAL);
+        emitShort(methodRef);
+    }
+
+    private void branch(int opcode, int target) {
+        if (branchCount + 2 > branches.length)
+            branches = Arrays.copyOf(branches, 2 * branches.length);
+        branches[branchCount++] = length;
+        branches[branchCount++] = target;
+        emit(opcode);
+        emitShort(0);
+    }
+
+    private void emitShort(int value) {
+        emit(value >> 8);
+        emit(value);
+    }
+
+    private void emit(int b) {
+        if (length == out.length)
+            out = Arrays.copyOf(out, 2 * length);
+        out[length++] = (byte) b;
+    }
+
+    private static final class ConstantPool {
+        private static final int UTF8 = 1;
+        private static final int INTEGER = 3;
+        private static final int CLASS = 7;
+        private static final int METHOD_REF = 10;
+        private static final int NAME_AND_TYPE = 12;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream data = new DataOutputStream(bytes);
+        private final HashMap<String, Integer> entries = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String value) {
+            Integer index = entries.get("U" + value);
+            if (index != null)
+                return index;
+            try {
+                data.writeByte(UTF8);
+                data.writeUTF(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return add("U" + value);
+        }
+
+        int integer(int value) {
+            Integer index = entries.get("I" + value);
+            if (index != null)
+                return index;
+            writeEntry(INTEGER, value >>> 16, value & 0xFFFF);
+            return add("I" + value);
+        }
+
+        int classRef(String name) {
+            Integer index = entries.get("C" + name);
+            if (index != null)
+                return index;
+            int nameIndex = utf8(name);
+            writeEntry(CLASS, nameIndex);
+            return add("C" + name);
+        }
+
+        int methodRef(String owner, String name, String type) {
+            String key = "M" + owner + "." + name + type;
+            Integer index = entries.get(key);
+            if (index != null)
+                return index;
+            int ownerIndex = classRef(owner);
+            int nameIndex = utf8(name);
+            int typeIndex = utf8(type);
+            writeEntry(NAME_AND_TYPE, nameIndex, typeIndex);
+            int nameAndType = count++;
+            writeEntry(METHOD_REF, ownerIndex, nameAndType);
+            return add(key);
+        }
+
+        private void writeEntry(int tag, int... shorts) {
+            try {
+                data.writeByte(tag);
+                for (int value : shorts) {
+                    data.writeShort(value);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private int add(String key) {
+            entries.put(key, count);
+            return count++;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeShort(count);
+            bytes.writeTo(out);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package muhzi.exec;
+
+import muhzi.parser.errors.SourceError;
+
+public class ExecutionError extends SourceError {
+    public ExecutionError(String s) {
+        this(s, -1, -1, -1);
+    }
+
+    public ExecutionError(String s, int offset, int line, int column) {
+        super(s, offset, line, column);
+    }
+}
@@ -0,0 +1,39 @@
+package muhzi.exec;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StreamTokenizer;
+
+@FunctionalInterface
+public interface Input {
+    /*
+    * Supplies the value of each read statement, in the order they run.
+    * Returning null means the input is exhausted, which fails the read.
+    */
+    Integer read(String variable) throws IOException;
+
+    static Input of(int... values) {
+        int[] next = {0};
+        return variable -> next[0] < values.length ? values[next[0]++] : null;
+    }
+
+    /*
+    * Whitespace separated integers of a text, anything else ends it.
+    */
+    static Input from(Reader reader) {
+        StreamTokenizer tokenizer = new StreamTokenizer(reader);
+        tokenizer.resetSyntax();
+        tokenizer.wordChars('-', '-');
+        tokenizer.wordChars('0', '9');
+        tokenizer.whitespaceChars(0, ' ');
+        return variable -> {
+            if (tokenizer.nextToken() != StreamTokenizer.TT_WORD)
+                return null;
+            try {
+                return Integer.valueOf(tokenizer.sval);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        };
+    }
+}
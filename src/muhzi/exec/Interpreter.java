@@ -0,0 +1,147 @@
+package muhzi.exec;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+
+public final class Interpreter {
+    /*
+    * Runs compiled programs. The frame is a single int array laid out as
+    * described in Program, the loop fetches an opcode, switches on it and
+    * reads its operands from the following ints, with no object created
+    * per instruction and no name looked up.
+    *
+    * Loops are the only way a program can run for long, so a limit on the
+    * number of times a repeat jumps back is checked there, together with
+    * the interrupt flag of the thread every 65536 iterations. An
+    * interrupted run ends with a CancellationException, as an interrupted
+    * parse does.
+    */
+
+    private final Input input;
+    private final Output output;
+    private long loopLimit = Long.MAX_VALUE;
+
+    public Interpreter(Input input, Output output) {
+        this.input = input;
+        this.output = output;
+    }
+
+    /*
+    * Maximum number of iterations of all loops of one run, beyond which
+    * the run fails.
+    */
+    public void setLoopLimit(long loopLimit) {
+        this.loopLimit = loopLimit;
+    }
+
+    /*
+    * Runs the program and returns the final value of its variables, by
+    * slot. Fails with an ExecutionError on a division by zero, a read
+    * past the end of the input or when the loop limit is exceeded.
+    */
+    public int[] run(Program program) throws IOException {
+        int[] code = program.code();
+        int[] frame = new int[program.frameSize()];
+        int[] constants = program.constants();
+        int variableCount = program.getVariableCount();
+        System.arraycopy(constants, 0, frame, variableCount, constants.length);
+
+        long loops = 0;
+        int pc = 0;
+        for (;;) {
+            switch (code[pc]) {
+                case Opcodes.MOVE:
+                    frame[code[pc + 1]] = frame[code[pc + 2]];
+                    pc += 3;
+                    break;
+                case Opcodes.ADD:
+                    frame[code[pc + 1]] = frame[code[pc + 2]] + frame[code[pc + 3]];
+                    pc += 4;
+                    break;
+                case Opcodes.SUB:
+                    frame[code[pc + 1]] = frame[code[pc + 2]] - frame[code[pc + 3]];
+                    pc += 4;
+                    break;
+                case Opcodes.MUL:
+                    frame[code[pc + 1]] = frame[code[pc + 2]] * frame[code[pc + 3]];
+                    pc += 4;
+                    break;
+                case Opcodes.DIV: {
+                    int divisor = frame[code[pc + 3]];
+                    if (divisor == 0)
+                        throw program.error("Division by zero", code[pc + 4]);
+                    frame[code[pc + 1]] = frame[code[pc + 2]] / divisor;
+                    pc += 5;
+                    break;
+                }
+                case Opcodes.LESS:
+                    frame[code[pc + 1]] = frame[code[pc + 2]] < frame[code[pc + 3]] ? 1 : 0;
+                    pc += 4;
+                    break;
+                case Opcodes.EQUAL:
+                    frame[code[pc + 1]] = frame[code[pc + 2]] == frame[code[pc + 3]] ? 1 : 0;
+                    pc += 4;
+                    break;
+                case Opcodes.JUMP:
+                    pc = code[pc + 1];
+                    break;
+                case Opcodes.JUMP_IF_ZERO:
+                    if (frame[code[pc + 1]] != 0) {
+                        pc += 3;
+                        break;
+                    }
+                    loops = jump(pc, code[pc + 2], loops);
+                    pc = code[pc + 2];
+                    break;
+                case Opcodes.JUMP_IF_NOT_LESS:
+                    if (frame[code[pc + 1]] < frame[code[pc + 2]]) {
+                        pc += 4;
+                        break;
+                    }
+                    loops = jump(pc, code[pc + 3], loops);
+                    pc = code[pc + 3];
+                    break;
+                case Opcodes.JUMP_IF_NOT_EQUAL:
+                    if (frame[code[pc + 1]] == frame[code[pc + 2]]) {
+                        pc += 4;
+                        break;
+                    }
+                    loops = jump(pc, code[pc + 3], loops);
+                    pc = code[pc + 3];
+                    break;
+                case Opcodes.READ: {
+                    int slot = code[pc + 1];
+                    Integer value = input.read(program.variable(slot));
+                    if (value == null)
+                        throw program.error("No input left to read " + program.variable(slot), code[pc + 2]);
+                    frame[slot] = value;
+                    pc += 3;
+                    break;
+                }
+                case Opcodes.WRITE:
+                    output.write(frame[code[pc + 1]]);
+                    pc += 2;
+                    break;
+                case Opcodes.HALT:
+                    int[] variables = new int[variableCount];
+                    System.arraycopy(frame, 0, variables, 0, variableCount);
+                    return variables;
+                default:
+                    throw new IllegalStateException("Invalid opcode " + code[pc] + " at " + pc);
+            }
+        }
+    }
+
+    /*
+    * Counts a conditional jump back to the start of a loop.
+    */
+    private long jump(int pc, int target, long loops) {
+        if (target > pc)
+            return loops;
+        if (++loops > loopLimit)
+            throw new ExecutionError("Loop limit of " + loopLimit + " iterations exceeded");
+        if ((loops & 0xFFFF) == 0 && Thread.currentThread().isInterrupted())
+            throw new CancellationException("Execution cancelled");
+        return loops;
+    }
+}
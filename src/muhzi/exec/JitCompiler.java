@@ -0,0 +1,143 @@
+package muhzi.exec;
+
+import muhzi.parser.SyntaxTreeNode;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class JitCompiler {
+    /*
+    * Compiles programs to JVM classes for the ones that run long enough
+    * for it to pay off, a class costs far more to generate and load than
+    * a Program costs to interpret once. Each class is defined as a hidden
+    * class of this package, which HotSpot compiles like any other code
+    * once it is hot and unloads once it is no longer used.
+    *
+    * Classes are cached by a hash of the code and the constants of the
+    * program, so the same program parsed again, or another one differing
+    * only in names and layout, reuses the class. The least recently used
+    * classes are dropped beyond maxClasses. The compiler is thread safe,
+    * two threads missing the same program at once both generate a class.
+    */
+
+    private static final class Key {
+        private final int[] code;
+        private final int[] constants;
+        private final int variableCount;
+        private final int hash;
+
+        private Key(Program program) {
+            this.code = program.code();
+            this.constants = program.constants();
+            this.variableCount = program.getVariableCount();
+            this.hash = 31 * (31 * Arrays.hashCode(code) + Arrays.hashCode(constants)) + variableCount;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return hash == key.hash && variableCount == key.variableCount
+                    && Arrays.equals(code, key.code) && Arrays.equals(constants, key.constants);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final int maxClasses;
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    // access ordered, the eldest entry is the least recently used one,
+    // a program too large to compile is kept as an empty entry
+    private final LinkedHashMap<Key, Optional<NativeCode>> classes = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public JitCompiler(int maxClasses) {
+        this.maxClasses = maxClasses;
+    }
+
+    public NativeProgram compile(SyntaxTreeNode root) {
+        return compile(BytecodeCompiler.compile(root));
+    }
+
+    public NativeProgram compile(Program program) {
+        Key key = new Key(program);
+        Optional<NativeCode> code;
+        synchronized (classes) {
+            code = classes.get(key);
+        }
+        if (code != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+            code = define(program);
+            store(key, code);
+        }
+        return new NativeProgram(program, code.orElse(null));
+    }
+
+    private Optional<NativeCode> define(Program program) {
+        byte[] bytes = ClassGenerator.generate(program);
+        if (bytes == null)
+            return Optional.empty();
+
+        try {
+            MethodHandles.Lookup hidden = lookup.defineHiddenClass(bytes, true);
+            NativeCode code = (NativeCode) hidden.findConstructor(hidden.lookupClass(),
+                    MethodType.methodType(void.class)).invoke();
+            return Optional.of(code);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot load compiled program", e);
+        }
+    }
+
+    private void store(Key key, Optional<NativeCode> code) {
+        synchronized (classes) {
+            classes.put(key, code);
+            Iterator<Map.Entry<Key, Optional<NativeCode>>> eldest = classes.entrySet().iterator();
+            while (classes.size() > maxClasses && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public int size() {
+        synchronized (classes) {
+            return classes.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return hits + " hits, " + misses + " misses, " + evictions + " evictions, " + size() + " classes";
+    }
+}
@@ -0,0 +1,13 @@
+package muhzi.exec;
+
+import java.io.IOException;
+
+abstract class NativeCode {
+    /*
+    * Base of the classes JitCompiler generates, one per distinct program.
+    * An instance holds no state, the same one runs any number of times at
+    * once, each run with its own context.
+    */
+
+    abstract int[] run(NativeContext context) throws IOException;
+}
@@ -0,0 +1,51 @@
+package muhzi.exec;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+
+final class NativeContext {
+    /*
+    * What generated code calls back into while it runs: the input and
+    * output of read and write, divisions, which may fail, and the count of
+    * loop iterations. The methods are small enough for HotSpot to inline
+    * them into the generated method.
+    */
+
+    private final Program program;
+    private final Input input;
+    private final Output output;
+    private final long loopLimit;
+    private long loops;
+
+    NativeContext(Program program, Input input, Output output, long loopLimit) {
+        this.program = program;
+        this.input = input;
+        this.output = output;
+        this.loopLimit = loopLimit;
+    }
+
+    int read(int slot, int position) throws IOException {
+        Integer value = input.read(program.variable(slot));
+        if (value == null)
+            throw program.error("No input left to read " + program.variable(slot), position);
+        return value;
+    }
+
+    void write(int value) throws IOException {
+        output.write(value);
+    }
+
+    int divide(int dividend, int divisor, int position) {
+        if (divisor == 0)
+            throw program.error("Division by zero", position);
+        return dividend / divisor;
+    }
+
+    // called on every jump back to the start of a loop
+    void loop() {
+        if (++loops > loopLimit)
+            throw new ExecutionError("Loop limit of " + loopLimit + " iterations exceeded");
+        if ((loops & 0xFFFF) == 0 && Thread.currentThread().isInterrupted())
+            throw new CancellationException("Execution cancelled");
+    }
+}
@@ -0,0 +1,45 @@
+package muhzi.exec;
+
+import java.io.IOException;
+
+public final class NativeProgram {
+    /*
+    * A program compiled by JitCompiler, run as JVM code. A program too
+    * large for HotSpot to compile has no class and is run by Interpreter
+    * instead, with the same results and errors. Runs share nothing and
+    * may happen on any number of threads at once.
+    */
+
+    private final Program program;
+    private final NativeCode code;
+
+    NativeProgram(Program program, NativeCode code) {
+        this.program = program;
+        this.code = code;
+    }
+
+    public Program getProgram() {
+        return program;
+    }
+
+    public boolean isNative() {
+        return code != null;
+    }
+
+    public int[] run(Input input, Output output) throws IOException {
+        return run(input, output, Long.MAX_VALUE);
+    }
+
+    /*
+    * As Interpreter.run, failing once loopLimit iterations of loops have
+    * run.
+    */
+    public int[] run(Input input, Output output, long loopLimit) throws IOException {
+        if (code == null) {
+            Interpreter interpreter = new Interpreter(input, output);
+            interpreter.setLoopLimit(loopLimit);
+            return interpreter.run(program);
+        }
+        return code.run(new NativeContext(program, input, output, loopLimit));
+    }
+}
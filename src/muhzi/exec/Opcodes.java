@@ -0,0 +1,54 @@
+package muhzi.exec;
+
+final class Opcodes {
+    /*
+    * Instructions of the register machine, each an opcode followed by its
+    * operands in the same int array. Operands named a, b and d are slots
+    * of the frame, t is the index of the instruction to jump to and pos
+    * the index of the source position an error is reported at.
+    *
+    *   MOVE d a          d = a
+    *   ADD, SUB, MUL d a b
+    *   DIV d a b pos
+    *   LESS, EQUAL d a b d = 1 when the comparison holds, 0 otherwise
+    *   JUMP t
+    *   JUMP_IF_ZERO a t
+    *   JUMP_IF_NOT_LESS a b t, JUMP_IF_NOT_EQUAL a b t
+    *   READ d pos
+    *   WRITE a
+    *   HALT
+    */
+
+    static final int MOVE = 0;
+    static final int ADD = 1;
+    static final int SUB = 2;
+    static final int MUL = 3;
+    static final int DIV = 4;
+    static final int LESS = 5;
+    static final int EQUAL = 6;
+    static final int JUMP = 7;
+    static final int JUMP_IF_ZERO = 8;
+    static final int JUMP_IF_NOT_LESS = 9;
+    static final int JUMP_IF_NOT_EQUAL = 10;
+    static final int READ = 11;
+    static final int WRITE = 12;
+    static final int HALT = 13;
+
+    private static final String[] NAMES = {
+            "move", "add", "sub", "mul", "div", "less", "equal", "jump",
+            "jump_if_zero", "jump_if_not_less", "jump_if_not_equal", "read", "write", "halt"
+    };
+
+    private static final int[] LENGTHS = {3, 4, 4, 4, 5, 4, 4, 2, 3, 4, 4, 3, 2, 1};
+
+    private Opcodes() {
+    }
+
+    static String name(int opcode) {
+        return NAMES[opcode];
+    }
+
+    static int length(int opcode) {
+        return LENGTHS[opcode];
+    }
+}
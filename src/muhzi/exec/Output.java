@@ -0,0 +1,19 @@
+package muhzi.exec;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+@FunctionalInterface
+public interface Output {
+    /*
+    * Receives the value of each write statement, in the order they run.
+    */
+    void write(int value) throws IOException;
+
+    Output NONE = value -> {
+    };
+
+    static Output to(PrintStream out) {
+        return out::println;
+    }
+}
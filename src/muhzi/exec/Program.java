@@ -0,0 +1,118 @@
+package muhzi.exec;
+
+public final class Program {
+    /*
+    * A TINY program lowered by BytecodeCompiler to register machine
+    * code, see Opcodes. The frame it runs in holds one int slot per
+    * variable, in the order the variables first appear in the source,
+    * then the constants, then the temporaries of expressions. The
+    * instructions that can fail refer to a position, kept as offset,
+    * line and column so the program does not depend on the tree once
+    * compiled. A program is immutable and can be run by any number of
+    * threads at once.
+    */
+
+    private final int[] code;
+    private final String[] variables;
+    private final int[] constants;
+    private final int frameSize;
+    private final int[] positions;
+
+    Program(int[] code, String[] variables, int[] constants, int frameSize, int[] positions) {
+        this.code = code;
+        this.variables = variables;
+        this.constants = constants;
+        this.frameSize = frameSize;
+        this.positions = positions;
+    }
+
+    int[] code() {
+        return code;
+    }
+
+    int[] constants() {
+        return constants;
+    }
+
+    int frameSize() {
+        return frameSize;
+    }
+
+    String variable(int slot) {
+        return variables[slot];
+    }
+
+    ExecutionError error(String message, int position) {
+        int i = 3 * position;
+        return new ExecutionError(message, positions[i], positions[i + 1], positions[i + 2]);
+    }
+
+    public int getVariableCount() {
+        return variables.length;
+    }
+
+    public String getVariable(int slot) {
+        return variables[slot];
+    }
+
+    /*
+    * Slot of a variable, -1 when the program never uses it.
+    */
+    public int getSlot(String variable) {
+        for (int i = 0; i < variables.length; i++) {
+            if (variables[i].equals(variable))
+                return i;
+        }
+        return -1;
+    }
+
+    public int getCodeLength() {
+        return code.length;
+    }
+
+    /*
+    * One instruction per line, operands that are slots shown as the
+    * variable, constant or temporary they hold.
+    */
+    public String disassemble() {
+        StringBuilder builder = new StringBuilder();
+        for (int pc = 0; pc < code.length; pc += Opcodes.length(code[pc])) {
+            int opcode = code[pc];
+            builder.append(pc).append(": ").append(Opcodes.name(opcode));
+            switch (opcode) {
+                case Opcodes.JUMP:
+                    builder.append(' ').append(code[pc + 1]);
+                    break;
+                case Opcodes.JUMP_IF_ZERO:
+                    builder.append(' ').append(slotName(code[pc + 1])).append(' ').append(code[pc + 2]);
+                    break;
+                case Opcodes.JUMP_IF_NOT_LESS:
+                case Opcodes.JUMP_IF_NOT_EQUAL:
+                    builder.append(' ').append(slotName(code[pc + 1])).append(' ')
+                            .append(slotName(code[pc + 2])).append(' ').append(code[pc + 3]);
+                    break;
+                case Opcodes.DIV:
+                    builder.append(' ').append(slotName(code[pc + 1])).append(' ')
+                            .append(slotName(code[pc + 2])).append(' ').append(slotName(code[pc + 3]));
+                    break;
+                case Opcodes.READ:
+                    builder.append(' ').append(slotName(code[pc + 1]));
+                    break;
+                default:
+                    for (int i = 1; i < Opcodes.length(opcode); i++) {
+                        builder.append(' ').append(slotName(code[pc + i]));
+                    }
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    private String slotName(int slot) {
+        if (slot < variables.length)
+            return variables[slot];
+        if (slot < variables.length + constants.length)
+            return "#" + constants[slot - variables.length];
+        return "t" + (slot - variables.length - constants.length);
+    }
+}
@@ -0,0 +1,137 @@
+package muhzi.parser;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+public class AsyncTraceWriter implements ParseTraceListener, Closeable {
+    /*
+    * Writes the parse trace to a file on a background thread. Parsing
+    * threads only enqueue the raw records, formatting and file I/O happen
+    * on the writer thread, which flushes whenever the queue runs empty.
+    *
+    * A parsing thread waits for room in a full queue only while the
+    * writer is open, records traced once it is closed, or once a write
+    * failed, are dropped. The writer thread owns the file and closes it
+    * whichever way it ends.
+    */
+
+    private static final String FORMAT = "[%1$tF %1$tT] [%2$s] %3$s %n";
+    private static final int QUEUE_CAPACITY = 8192;
+    private static final long OFFER_MILLIS = 50;
+
+    private static final class Record {
+        private final long millis;
+        private final Level level;
+        private final String message;
+
+        private Record(long millis, Level level, String message) {
+            this.millis = millis;
+            this.level = level;
+            this.message = message;
+        }
+    }
+
+    private static final Record END = new Record(0, Level.OFF, null);
+
+    private final BlockingQueue<Record> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final BufferedWriter writer;
+    private final Thread thread;
+    private volatile boolean closed;
+
+    public AsyncTraceWriter(Path file) throws IOException {
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        thread = new Thread(this::drain, "parse-trace-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /*
+    * Opens the trace file the GUI has always written, parser_output.txt
+    * in the working directory.
+    */
+    public static AsyncTraceWriter openDefault() throws IOException {
+        return new AsyncTraceWriter(Paths.get(System.getProperty("user.dir") +
+                File.separator + "parser_output.txt"));
+    }
+
+    @Override
+    public void trace(Level level, String message) {
+        Record record = new Record(System.currentTimeMillis(), level, message);
+        try {
+            // a thread that got past the check as the writer closed must
+            // not wait for a writer thread that is gone
+            while (!closed) {
+                if (queue.offer(record, OFFER_MILLIS, TimeUnit.MILLISECONDS))
+                    return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        List<Record> batch = new ArrayList<>();
+        try {
+            for (;;) {
+                batch.add(queue.take());
+                queue.drainTo(batch);
+
+                for (Record record : batch) {
+                    if (record == END) {
+                        writer.flush();
+                        return;
+                    }
+                    writer.write(String.format(FORMAT,
+                            new Date(record.millis),
+                            record.level.getLocalizedName(),
+                            record.message));
+                }
+                batch.clear();
+
+                if (queue.isEmpty())
+                    writer.flush();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            // stop tracing rather than block the parsers on a full queue
+            closed = true;
+            queue.clear();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closed = true;
+            try {
+                writer.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            // the writer thread may already have stopped on an error
+            while (thread.isAlive() && !queue.offer(END, OFFER_MILLIS, TimeUnit.MILLISECONDS)) {
+                // the queue is being drained, try again
+            }
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
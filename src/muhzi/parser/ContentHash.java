@@ -0,0 +1,98 @@
+package muhzi.parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+final class ContentHash {
+    /*
+    * 64-bit hash of source text, taken over its 16-bit characters four at
+    * a time. Bytes of a file are hashed as the ISO-8859-1 characters the
+    * scanner reads them as, so a file and a String holding the same text
+    * hash alike.
+    */
+
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+    private static final long K1 = 0xC2B2AE3D27D4EB4FL;
+    private static final long K2 = 0x165667B19E3779F9L;
+
+    private static final int CHUNK = 1 << 26;
+
+    private long hash = SEED;
+    private long word;
+    private int filled;
+    private long length;
+
+    void add(char c) {
+        word |= (long) c << (filled << 4);
+        length++;
+        if (++filled == 4) {
+            mix(word);
+            word = 0;
+            filled = 0;
+        }
+    }
+
+    private void mix(long w) {
+        w *= K1;
+        w = Long.rotateLeft(w, 31) * K2;
+        hash = Long.rotateLeft(hash ^ w, 27) * K1 + K2;
+    }
+
+    long finish() {
+        long h = hash;
+        if (filled > 0) {
+            long w = word * K1;
+            h ^= Long.rotateLeft(w, 31) * K2;
+        }
+        h ^= length;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    long length() {
+        return length;
+    }
+
+    static ContentHash of(CharSequence text) {
+        ContentHash hash = new ContentHash();
+        for (int i = 0; i < text.length(); i++) {
+            hash.add(text.charAt(i));
+        }
+        return hash;
+    }
+
+    static ContentHash of(Path file) throws IOException {
+        ContentHash hash = new ContentHash();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += CHUNK) {
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY,
+                        position, Math.min(CHUNK, size - position));
+                hash.addBytes(chunk);
+            }
+        }
+        return hash;
+    }
+
+    private void addBytes(ByteBuffer bytes) {
+        bytes.order(ByteOrder.LITTLE_ENDIAN);
+        // whole words at once while no character is pending
+        while (filled == 0 && bytes.remaining() >= 4) {
+            long b = bytes.getInt() & 0xFFFFFFFFL;
+            mix((b & 0xFF) | (b & 0xFF00) << 8 | (b & 0xFF0000) << 16 | (b & 0xFF000000L) << 24);
+            length += 4;
+        }
+        while (bytes.hasRemaining()) {
+            add((char) (bytes.get() & 0xFF));
+        }
+    }
+}
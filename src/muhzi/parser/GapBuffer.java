@@ -0,0 +1,135 @@
+package muhzi.parser;
+
+import java.io.InterruptedIOException;
+import java.io.Reader;
+
+final class GapBuffer {
+    /*
+    * Editable source text. The free space of the array is kept at the
+    * position of the last edit, so a run of edits in the same area only
+    * moves the characters between them instead of the whole text.
+    */
+
+    private static final int MIN_GAP = 256;
+
+    private char[] buf;
+    private int gapStart;
+    private int gapEnd;
+
+    GapBuffer(String text) {
+        buf = new char[text.length() + MIN_GAP];
+        text.getChars(0, text.length(), buf, 0);
+        gapStart = text.length();
+        gapEnd = buf.length;
+    }
+
+    int length() {
+        return buf.length - (gapEnd - gapStart);
+    }
+
+    char charAt(int i) {
+        return i < gapStart ? buf[i] : buf[i + gapEnd - gapStart];
+    }
+
+    void replace(int offset, int removedLength, String inserted) {
+        moveGap(offset);
+        gapEnd += removedLength;
+
+        int n = inserted.length();
+        if (gapEnd - gapStart < n)
+            growGap(n);
+        inserted.getChars(0, n, buf, gapStart);
+        gapStart += n;
+    }
+
+    private void moveGap(int offset) {
+        if (offset < gapStart) {
+            int n = gapStart - offset;
+            System.arraycopy(buf, offset, buf, gapEnd - n, n);
+            gapStart -= n;
+            gapEnd -= n;
+        } else if (offset > gapStart) {
+            int n = offset - gapStart;
+            System.arraycopy(buf, gapEnd, buf, gapStart, n);
+            gapStart += n;
+            gapEnd += n;
+        }
+    }
+
+    private void growGap(int needed) {
+        int after = buf.length - gapEnd;
+        int capacity = Math.max(2 * buf.length, length() + needed + MIN_GAP);
+        char[] grown = new char[capacity];
+        System.arraycopy(buf, 0, grown, 0, gapStart);
+        System.arraycopy(buf, gapEnd, grown, capacity - after, after);
+        buf = grown;
+        gapEnd = capacity - after;
+    }
+
+    ContentHash hash() {
+        ContentHash hash = new ContentHash();
+        for (int i = 0; i < gapStart; i++) {
+            hash.add(buf[i]);
+        }
+        for (int i = gapEnd; i < buf.length; i++) {
+            hash.add(buf[i]);
+        }
+        return hash;
+    }
+
+    /*
+    * Returns a reader over the characters in [start, end), valid until the
+    * next edit. An interruptible reader fails with InterruptedIOException
+    * once the reading thread is interrupted.
+    */
+    Reader reader(int start, int end) {
+        return new RangeReader(start, end, false);
+    }
+
+    Reader interruptibleReader(int start, int end) {
+        return new RangeReader(start, end, true);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(length());
+        text.append(buf, 0, gapStart);
+        text.append(buf, gapEnd, buf.length - gapEnd);
+        return text.toString();
+    }
+
+    private final class RangeReader extends Reader {
+        private int pos;
+        private final int end;
+        private final boolean interruptible;
+
+        private RangeReader(int start, int end, boolean interruptible) {
+            this.pos = start;
+            this.end = end;
+            this.interruptible = interruptible;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws InterruptedIOException {
+            if (interruptible && Thread.currentThread().isInterrupted())
+                throw new InterruptedIOException();
+            if (pos >= end)
+                return -1;
+
+            int n = Math.min(len, end - pos);
+            int copied = 0;
+            if (pos < gapStart) {
+                copied = Math.min(n, gapStart - pos);
+                System.arraycopy(buf, pos, cbuf, off, copied);
+            }
+            if (copied < n)
+                System.arraycopy(buf, pos + copied + gapEnd - gapStart, cbuf, off + copied, n - copied);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package muhzi.parser;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class Histogram {
+    /*
+    * Distribution of non-negative values in buckets of powers of two, the
+    * value v goes to bucket 64 - numberOfLeadingZeros(v), 0 to bucket 0.
+    * Percentiles are the upper bound of their bucket, at most twice the
+    * exact value, which is enough to tell a pathological input apart.
+    * Recording takes no lock and may happen from any number of threads.
+    */
+
+    private static final int BUCKETS = 65;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        counts.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+        count.increment();
+        sum.add(value);
+        for (long known = max.get(); value > known; known = max.get()) {
+            if (max.compareAndSet(known, value))
+                break;
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /*
+    * The smallest bucket bound below which at least the given fraction of
+    * the values are, never above the largest value recorded.
+    */
+    public long getPercentile(double fraction) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        int bucket = 0;
+        for (; bucket < BUCKETS - 1; bucket++) {
+            seen += snapshot[bucket];
+            if (seen >= rank)
+                break;
+        }
+        long bound = bucket == 0 ? 0 : bucket == 64 ? Long.MAX_VALUE : (1L << bucket) - 1;
+        return Math.min(bound, max.get());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count %d, mean %.1f, p50 %d, p99 %d, max %d",
+                getCount(), getMean(), getPercentile(0.5), getPercentile(0.99), getMax());
+    }
+}
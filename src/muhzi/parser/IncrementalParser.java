@@ -0,0 +1,271 @@
+package muhzi.parser;
+
+import muhzi.parser.errors.SyntaxError;
+import muhzi.parser.errors.TokenError;
+
+import java.util.Arrays;
+
+public class IncrementalParser {
+    /*
+    * Keeps the source text and the tree of an editor buffer up to date
+    * edit by edit. An edit only re-parses the innermost statement whose
+    * text encloses it, the statement is replaced in place by the nodes
+    * parsed from its new text and the rest of the tree is kept as is. An
+    * edit touching the start or the end of a statement belongs to it, as
+    * does one past the last statement of the program, like typing at the
+    * end of the file.
+    *
+    * When the new text of that statement does not parse on its own, or
+    * its first or last token could merge with the text around it, the
+    * enclosing statements are tried in turn and then the whole program. Replaced
+    * nodes are left unreachable in the tree until they outnumber the live
+    * ones, the next edit then re-parses everything into a fresh tree.
+    *
+    * An IncrementalParser belongs to a single editor and is not thread
+    * safe. A full parse stops with a CancellationException when the thread
+    * running it is interrupted, the tree is then unset until the next one.
+    *
+    * With a ParseCache a full parse first looks the text up there, so a
+    * text that was parsed before, like a file opened again, only costs
+    * hashing it and copying its tree.
+    *
+    * With a ParseMetricsRegistry every parse that changes the tree is
+    * recorded there, as well as full parses that fail. A statement that
+    * does not parse on its own is not, the enclosing one is tried next.
+    */
+
+    private final ParseContext context;
+    private final ParseCache cache;
+    private final ParseMetricsRegistry metrics;
+
+    private GapBuffer source = new GapBuffer("");
+    private SyntaxTree tree;
+    private int garbage;
+    private int anchor = SyntaxTree.NONE;
+    private int lastReparsedLength;
+
+    // enclosing statements and the first statement of the stmt-sequence
+    // each of them belongs to
+    private int[] path = new int[16];
+    private int[] heads = new int[16];
+    private int depth;
+
+    public IncrementalParser() {
+        this(ParseTraceListener.NONE);
+    }
+
+    public IncrementalParser(ParseTraceListener listener) {
+        this(listener, null);
+    }
+
+    public IncrementalParser(ParseTraceListener listener, ParseCache cache) {
+        this(listener, cache, null);
+    }
+
+    public IncrementalParser(ParseTraceListener listener, ParseCache cache, ParseMetricsRegistry metrics) {
+        this.context = new ParseContext(listener, metrics != null);
+        this.cache = cache;
+        this.metrics = metrics;
+    }
+
+    /*
+    * Replaces the whole text and parses it from scratch.
+    */
+    public SyntaxTreeNode parse(String text) {
+        source = new GapBuffer(text);
+        return reparse();
+    }
+
+    /*
+    * Parses the current text from scratch.
+    */
+    public SyntaxTreeNode parse() {
+        return reparse();
+    }
+
+    /*
+    * Applies an edit to the text only and drops the tree, for edits that
+    * are known to be followed by others before the tree is needed.
+    */
+    public void replaceText(int offset, int removedLength, String inserted) {
+        checkEdit(offset, removedLength);
+        source.replace(offset, removedLength, inserted);
+        tree = null;
+    }
+
+    /*
+    * Applies an edit that replaced removedLength characters at offset
+    * with inserted and returns the updated tree. When the edited program
+    * does not parse the error is thrown and getTree() returns null until
+    * an edit makes it valid again.
+    */
+    public SyntaxTreeNode edit(int offset, int removedLength, String inserted) {
+        checkEdit(offset, removedLength);
+        source.replace(offset, removedLength, inserted);
+        if (tree == null || garbage > tree.size() - garbage)
+            return reparse();
+
+        findEnclosingStatements(offset, offset + removedLength);
+        int delta = inserted.length() - removedLength;
+        for (int level = depth - 1; level >= 0; level--) {
+            if (reparseStatement(level, offset + removedLength, delta)) {
+                tree.getLines().replace(offset, removedLength, inserted);
+                return tree.getRootNode();
+            }
+        }
+        return reparse();
+    }
+
+    private void checkEdit(int offset, int removedLength) {
+        if (offset < 0 || removedLength < 0 || offset + removedLength > source.length())
+            throw new IndexOutOfBoundsException("Edit [" + offset + ", " + (offset + removedLength) +
+                    ") outside of text of length " + source.length());
+    }
+
+    public SyntaxTreeNode getTree() {
+        return tree == null ? null : tree.getRootNode();
+    }
+
+    public String getText() {
+        return source.toString();
+    }
+
+    /*
+    * Number of characters re-parsed by the last edit, the whole text when
+    * it fell back to a full parse.
+    */
+    public int getLastReparsedLength() {
+        return lastReparsedLength;
+    }
+
+    private SyntaxTreeNode reparse() {
+        tree = null;
+        garbage = 0;
+        anchor = SyntaxTree.NONE;
+
+        ContentHash hash = cache == null ? null : source.hash();
+        SyntaxTree fresh = hash == null ? null : cache.lookupCopy(hash);
+        if (fresh == null) {
+            fresh = new SyntaxTree();
+            long start = metrics == null ? 0 : System.nanoTime();
+            try {
+                fresh.setRoot(context.parse(fresh, source.interruptibleReader(0, source.length()), 0));
+                fresh.setLines(context.takeLines());
+                record(start, 0);
+            } catch (SyntaxError | TokenError e) {
+                record(start, 1);
+                if (hash != null)
+                    cache.storeError(hash, e);
+                throw e;
+            } finally {
+                context.release();
+            }
+            if (hash != null)
+                cache.storeCopy(hash, fresh);
+        }
+
+        tree = fresh;
+        tree.setTextLength(source.length());
+        anchor = fresh.getRoot();
+        lastReparsedLength = source.length();
+        return fresh.getRootNode();
+    }
+
+    /*
+    * Fills path with the statements whose text encloses [start, end),
+    * from the outermost to the innermost one. A top-level edit after the
+    * last statement goes to that statement.
+    */
+    private void findEnclosingStatements(int start, int end) {
+        depth = 0;
+
+        // top-level statements are found from the one near the last edit,
+        // walking back through the previous statement links when needed
+        int statement = anchor;
+        while (statement != SyntaxTree.NONE && tree.getOffset(statement) > start) {
+            statement = tree.getParent(statement);
+        }
+        statement = statement == SyntaxTree.NONE ? SyntaxTree.NONE : enclosingInSequence(statement, start, end, true);
+        int head = tree.getRoot();
+
+        while (statement != SyntaxTree.NONE) {
+            if (depth == path.length) {
+                path = Arrays.copyOf(path, 2 * depth);
+                heads = Arrays.copyOf(heads, 2 * depth);
+            }
+            path[depth] = statement;
+            heads[depth++] = head;
+
+            int inner = SyntaxTree.NONE;
+            for (int child = tree.getFirstChild(statement);
+                 child != SyntaxTree.NONE && inner == SyntaxTree.NONE;
+                 child = tree.getNextSibling(child)) {
+                if (!tree.getKind(child).isExpression()) {
+                    inner = enclosingInSequence(child, start, end, false);
+                    head = child;
+                }
+            }
+            statement = inner;
+        }
+    }
+
+    private int enclosingInSequence(int statement, int start, int end, boolean program) {
+        int last = SyntaxTree.NONE;
+        for (; statement != SyntaxTree.NONE; statement = tree.getNext(statement)) {
+            int offset = tree.getOffset(statement);
+            if (offset > start)
+                return SyntaxTree.NONE;
+            if (end <= offset + tree.getLength(statement))
+                return statement;
+            last = statement;
+        }
+        // only blanks and comments follow the last statement of a program
+        return program ? last : SyntaxTree.NONE;
+    }
+
+    private boolean reparseStatement(int level, int editEnd, int delta) {
+        int statement = path[level];
+        int start = tree.getOffset(statement);
+        int oldEnd = Math.max(start + tree.getLength(statement), editEnd);
+        int newEnd = oldEnd + delta;
+        if (newEnd <= start)
+            return false;
+
+        // the text around the statement is unchanged, but the tokens next
+        // to it could now run into its first or last one
+        if (start > 0 &&
+                Lexer.isWordChar(source.charAt(start - 1)) && Lexer.isWordChar(source.charAt(start)))
+            return false;
+        if (newEnd < source.length() &&
+                Lexer.isWordChar(source.charAt(newEnd - 1)) && Lexer.isWordChar(source.charAt(newEnd)))
+            return false;
+
+        tree.moveGap(oldEnd, anchor);
+        int sizeBefore = tree.size();
+        long parseStart = metrics == null ? 0 : System.nanoTime();
+        int first;
+        try {
+            first = context.parseStatements(tree, source.reader(start, newEnd), start);
+            record(parseStart, 0);
+        } catch (SyntaxError | TokenError | StackOverflowError e) {
+            // too deep on its own is too deep as a whole, the full parse
+            // it falls back to throws it again with the tree unset
+            tree.truncate(sizeBefore);
+            return false;
+        } finally {
+            context.release();
+        }
+
+        garbage += tree.getSubtreeSize(statement);
+        anchor = statement == path[0] ? first : path[0];
+        tree.replaceStatement(statement, first, heads[level], path, level);
+        tree.shiftSpans(delta, path, level);
+        lastReparsedLength = newEnd - start;
+        return true;
+    }
+
+    private void record(long start, int errors) {
+        if (metrics != null)
+            metrics.record(context.measure(null, System.nanoTime() - start, errors));
+    }
+}
@@ -0,0 +1,372 @@
+package muhzi.parser;
+
+import muhzi.parser.errors.TokenError;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+class Lexer {
+    /*
+    * Table-driven scanner core. Input is read in blocks into a reusable
+    * char window, characters are classified through a precomputed ASCII
+    * class table and every token is reported as a (kind, start, length)
+    * slice of the window, so nothing is allocated while scanning.
+    *
+    * The window only ever holds the token being scanned plus read-ahead,
+    * a slice is valid until the next call to next(). Identifier and number
+    * lexemes are interned, so repeated names share a single String.
+    *
+    * The start of every line is recorded on the way. A bad character is
+    * consumed before its TokenError is thrown, so scanning can go on
+    * after the error.
+    */
+
+    private static final byte OTHER = 0;
+    private static final byte WHITESPACE = 1;
+    private static final byte DIGIT = 2;
+    private static final byte ALPHA = 3;
+    private static final byte SPECIAL = 4;
+    private static final byte COLON = 5;
+    private static final byte COMMENT = 6;
+
+    private static final TokenKind[] SYMBOL_KIND = new TokenKind[128];
+    static {
+        SYMBOL_KIND['+'] = TokenKind.PLUS;
+        SYMBOL_KIND['-'] = TokenKind.MINUS;
+        SYMBOL_KIND['*'] = TokenKind.TIMES;
+        SYMBOL_KIND['/'] = TokenKind.OVER;
+        SYMBOL_KIND['='] = TokenKind.EQUAL;
+        SYMBOL_KIND['<'] = TokenKind.LESS_THAN;
+        SYMBOL_KIND['('] = TokenKind.LEFT_PAREN;
+        SYMBOL_KIND[')'] = TokenKind.RIGHT_PAREN;
+        SYMBOL_KIND[';'] = TokenKind.SEMICOLON;
+    }
+
+    private static final byte[] CHAR_CLASS = new byte[128];
+    static {
+        for (int c = 0; c < CHAR_CLASS.length; c++) {
+            CHAR_CLASS[c] = classify(c);
+        }
+        for (int c = 0; c < SYMBOL_KIND.length; c++) {
+            if (SYMBOL_KIND[c] != null)
+                CHAR_CLASS[c] = SPECIAL;
+        }
+        CHAR_CLASS[':'] = COLON;
+        CHAR_CLASS['{'] = COMMENT;
+    }
+
+    private static final int DEFAULT_WINDOW = 8192;
+    private static final int DEFAULT_INTERN_CAPACITY = 256;
+
+    private Reader reader;
+    private char[] buf;
+    private int pos;
+    private int limit;
+    private int base;
+
+    private TokenKind kind;
+    private int tokenStart;
+    private int tokenLength;
+
+    private LineMap lines = new LineMap();
+
+    private String[] internTable;
+    private int[] internHashes;
+    private int internCount;
+
+    Lexer() {
+        buf = new char[DEFAULT_WINDOW];
+        internTable = new String[DEFAULT_INTERN_CAPACITY];
+        internHashes = new int[DEFAULT_INTERN_CAPACITY];
+    }
+
+    Lexer(Reader reader) {
+        this();
+        reset(reader);
+    }
+
+    void reset(Reader reader) {
+        reset(reader, 0);
+    }
+
+    /*
+    * Starts scanning reader as if its first character was at baseOffset,
+    * token offsets are reported relative to that position.
+    */
+    void reset(Reader reader, int baseOffset) {
+        this.reader = reader;
+        pos = limit = 0;
+        base = baseOffset;
+        kind = TokenKind.EOF;
+        tokenStart = tokenLength = 0;
+        lines.reset(baseOffset);
+        if (internCount > 0) {
+            Arrays.fill(internTable, null);
+            internCount = 0;
+        }
+    }
+
+    private static byte classify(int x) {
+        if (Character.isWhitespace(x)) {
+            return WHITESPACE;
+        } else if (Character.isDigit(x)) {
+            return DIGIT;
+        } else if (Character.isAlphabetic(x)) {
+            return ALPHA;
+        }
+        return OTHER;
+    }
+
+    private static int classOf(char c) {
+        return c < 128 ? CHAR_CLASS[c] : classify(c);
+    }
+
+    /*
+    * Whether c can continue an identifier or a number, two adjacent word
+    * characters may end up in the same token.
+    */
+    static boolean isWordChar(char c) {
+        int cls = classOf(c);
+        return cls == DIGIT || cls == ALPHA;
+    }
+
+    TokenKind next() throws IOException {
+        for (;;) {
+            tokenStart = pos;
+            if (pos == limit && !fill()) {
+                tokenLength = 0;
+                return kind = TokenKind.EOF;
+            }
+
+            char c = buf[pos];
+            switch (classOf(c)) {
+                case WHITESPACE:
+                    if (c == '\n')
+                        lines.addLineStart(base + pos + 1);
+                    pos++;
+                    break;
+                case COMMENT:
+                    skipComment();
+                    break;
+                case DIGIT:
+                    scanRun(false);
+                    return kind = TokenKind.NUMBER;
+                case ALPHA:
+                    scanRun(true);
+                    return kind = keywordOrIdentifier();
+                case SPECIAL:
+                    pos++;
+                    tokenLength = 1;
+                    return kind = SYMBOL_KIND[c];
+                case COLON:
+                    return scanAssign();
+                default:
+                    throw tokenError(String.valueOf(c), base + pos++);
+            }
+        }
+    }
+
+    private void scanRun(boolean alphaNumeric) throws IOException {
+        pos++;
+        for (;;) {
+            if (pos == limit && !fill())
+                break;
+
+            int cls = classOf(buf[pos]);
+            if (cls == DIGIT || (alphaNumeric && cls == ALPHA)) {
+                pos++;
+            } else {
+                break;
+            }
+        }
+        tokenLength = pos - tokenStart;
+    }
+
+    private TokenKind keywordOrIdentifier() {
+        switch (tokenLength) {
+            case 2:
+                if (lexemeEquals("if"))
+                    return TokenKind.IF;
+                break;
+            case 3:
+                if (lexemeEquals("end"))
+                    return TokenKind.END;
+                break;
+            case 4:
+                switch (buf[tokenStart]) {
+                    case 't':
+                        if (lexemeEquals("then"))
+                            return TokenKind.THEN;
+                        break;
+                    case 'e':
+                        if (lexemeEquals("else"))
+                            return TokenKind.ELSE;
+                        break;
+                    case 'r':
+                        if (lexemeEquals("read"))
+                            return TokenKind.READ;
+                        break;
+                }
+                break;
+            case 5:
+                switch (buf[tokenStart]) {
+                    case 'u':
+                        if (lexemeEquals("until"))
+                            return TokenKind.UNTIL;
+                        break;
+                    case 'w':
+                        if (lexemeEquals("write"))
+                            return TokenKind.WRITE;
+                        break;
+                }
+                break;
+            case 6:
+                if (lexemeEquals("repeat"))
+                    return TokenKind.REPEAT;
+                break;
+        }
+        return TokenKind.IDENTIFIER;
+    }
+
+    private TokenKind scanAssign() throws IOException {
+        int start = base + pos++;
+        if (pos == limit && !fill())
+            throw tokenError(":", start);
+        if (buf[pos] != '=')
+            throw tokenError(":" + buf[pos], start);
+
+        pos++;
+        tokenLength = 2;
+        return kind = TokenKind.ASSIGN;
+    }
+
+    private void skipComment() throws IOException {
+        int start = base + pos;
+        for (;;) {
+            tokenStart = pos;
+            if (pos == limit && !fill())
+                throw tokenError("{", start);
+            char c = buf[pos++];
+            if (c == '}')
+                return;
+            if (c == '\n')
+                lines.addLineStart(base + pos);
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (tokenStart > 0) {
+            // slide the pending token to the front of the window
+            int pending = limit - tokenStart;
+            System.arraycopy(buf, tokenStart, buf, 0, pending);
+            base += tokenStart;
+            pos -= tokenStart;
+            limit = pending;
+            tokenStart = 0;
+        } else if (limit == buf.length) {
+            buf = Arrays.copyOf(buf, 2 * buf.length);
+        }
+
+        int n = reader.read(buf, limit, buf.length - limit);
+        if (n <= 0)
+            return false;
+        limit += n;
+        return true;
+    }
+
+    TokenKind kind() {
+        return kind;
+    }
+
+    int tokenStart() {
+        return base + tokenStart;
+    }
+
+    int tokenLength() {
+        return tokenLength;
+    }
+
+    private TokenError tokenError(String token, int offset) {
+        return new TokenError(token, offset, lines.getLine(offset), lines.getColumn(offset));
+    }
+
+    LineMap lines() {
+        return lines;
+    }
+
+    /*
+    * Hands the line starts found so far over to a tree, scanning goes on
+    * with a new table.
+    */
+    LineMap takeLines() {
+        LineMap taken = lines;
+        lines = new LineMap();
+        return taken;
+    }
+
+    char charAt(int i) {
+        return buf[tokenStart + i];
+    }
+
+    boolean lexemeEquals(String s) {
+        if (s.length() != tokenLength)
+            return false;
+        for (int i = 0; i < tokenLength; i++) {
+            if (buf[tokenStart + i] != s.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /*
+    * Returns the interned text of the current token, a new String is only
+    * created the first time a lexeme is seen.
+    */
+    String lexeme() {
+        int hash = 0;
+        for (int i = tokenStart; i < tokenStart + tokenLength; i++) {
+            hash = 31 * hash + buf[i];
+        }
+
+        int mask = internTable.length - 1;
+        int slot = mix(hash) & mask;
+        String s;
+        while ((s = internTable[slot]) != null) {
+            if (internHashes[slot] == hash && lexemeEquals(s))
+                return s;
+            slot = (slot + 1) & mask;
+        }
+
+        s = new String(buf, tokenStart, tokenLength);
+        internTable[slot] = s;
+        internHashes[slot] = hash;
+        if (++internCount > internTable.length / 2)
+            growInternTable();
+        return s;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private void growInternTable() {
+        String[] oldTable = internTable;
+        int[] oldHashes = internHashes;
+        internTable = new String[2 * oldTable.length];
+        internHashes = new int[2 * oldTable.length];
+
+        int mask = internTable.length - 1;
+        for (int i = 0; i < oldTable.length; i++) {
+            if (oldTable[i] == null)
+                continue;
+
+            int slot = mix(oldHashes[i]) & mask;
+            while (internTable[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            internTable[slot] = oldTable[i];
+            internHashes[slot] = oldHashes[i];
+        }
+    }
+}
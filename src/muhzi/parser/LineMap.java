@@ -0,0 +1,137 @@
+package muhzi.parser;
+
+public final class LineMap {
+    /*
+    * Offsets at which the lines of a source text start, recorded by the
+    * lexer as it skips newlines. Lines and columns are numbered from 1,
+    * the line of an offset is found by binary search, so a position costs
+    * one int per line of text and nothing per node or token.
+    */
+
+    private int[] starts;
+    private int count;
+
+    // free space kept at the line of the last edit, the lines after it are
+    // stored without the shift that every edit before them adds up, so an
+    // edit only moves the line starts between it and the previous one
+    private int gapStart;
+    private int gapEnd;
+    private int shift;
+
+    LineMap() {
+        this(16);
+    }
+
+    private LineMap(int capacity) {
+        starts = new int[capacity];
+        reset(0);
+    }
+
+    void reset(int baseOffset) {
+        starts[0] = baseOffset;
+        count = 1;
+        gapStart = 1;
+        gapEnd = starts.length;
+        shift = 0;
+    }
+
+    void addLineStart(int offset) {
+        moveGap(count);
+        if (gapStart == gapEnd)
+            growGap(1);
+        starts[gapStart++] = offset;
+        count++;
+    }
+
+    LineMap copy() {
+        LineMap copy = new LineMap(count + 1);
+        for (int i = 0; i < count; i++) {
+            copy.starts[i] = start(i);
+        }
+        copy.count = count;
+        copy.gapStart = count;
+        return copy;
+    }
+
+    /*
+    * Follows an edit that replaced removedLength characters at offset
+    * with inserted: lines starting in the removed text go away, the ones
+    * after it move and a line starts after every inserted newline.
+    */
+    void replace(int offset, int removedLength, String inserted) {
+        int from = upperBound(offset);
+        int to = upperBound(offset + removedLength);
+
+        int added = 0;
+        for (int i = 0; i < inserted.length(); i++) {
+            if (inserted.charAt(i) == '\n')
+                added++;
+        }
+
+        moveGap(to);
+        gapStart = from;
+        shift += inserted.length() - removedLength;
+        if (gapEnd - gapStart < added)
+            growGap(added);
+        for (int i = 0; i < inserted.length(); i++) {
+            if (inserted.charAt(i) == '\n')
+                starts[gapStart++] = offset + i + 1;
+        }
+        count += added - (to - from);
+    }
+
+    private void moveGap(int index) {
+        while (gapStart > index) {
+            starts[--gapEnd] = starts[--gapStart] - shift;
+        }
+        while (gapStart < index) {
+            starts[gapStart++] = starts[gapEnd++] + shift;
+        }
+    }
+
+    private void growGap(int needed) {
+        int after = starts.length - gapEnd;
+        int capacity = Math.max(2 * starts.length, count + needed + 16);
+        int[] grown = new int[capacity];
+        System.arraycopy(starts, 0, grown, 0, gapStart);
+        System.arraycopy(starts, gapEnd, grown, capacity - after, after);
+        starts = grown;
+        gapEnd = capacity - after;
+    }
+
+    private int start(int index) {
+        return index < gapStart ? starts[index] : starts[index + gapEnd - gapStart] + shift;
+    }
+
+    // index of the first line starting after offset
+    private int upperBound(int offset) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (start(middle) <= offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public int getLineCount() {
+        return count;
+    }
+
+    public int getLineStart(int line) {
+        return start(line - 1);
+    }
+
+    public int getLine(int offset) {
+        // the line of an offset is the number of lines starting at or before it
+        return Math.max(upperBound(offset), 1);
+    }
+
+    public int getColumn(int offset) {
+        return offset - start(getLine(offset) - 1) + 1;
+    }
+}
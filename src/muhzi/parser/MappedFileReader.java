@@ -0,0 +1,63 @@
+package muhzi.parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+final class MappedFileReader extends Reader {
+    /*
+    * Reads a source file through memory-mapped chunks and widens every
+    * byte straight into the caller's char buffer. Tiny sources are ASCII,
+    * bytes above 0x7F are decoded as ISO-8859-1. Only one chunk is mapped
+    * at a time and nothing is copied onto the heap, so reading a file of
+    * any size costs the same heap as reading a small one.
+    */
+
+    private static final long CHUNK_SIZE = 64L << 20;
+
+    private final FileChannel channel;
+    private final long size;
+    private long chunkStart;
+    private MappedByteBuffer chunk;
+
+    MappedFileReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        size = channel.size();
+    }
+
+    private boolean nextChunk() throws IOException {
+        long next = chunk == null ? 0 : chunkStart + chunk.capacity();
+        if (next >= size)
+            return false;
+
+        chunkStart = next;
+        chunk = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart,
+                Math.min(CHUNK_SIZE, size - chunkStart));
+        return true;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if ((chunk == null || !chunk.hasRemaining()) && !nextChunk())
+            return -1;
+
+        int n = Math.min(len, chunk.remaining());
+        int p = chunk.position();
+        for (int i = 0; i < n; i++) {
+            cbuf[off + i] = (char) (chunk.get(p + i) & 0xFF);
+        }
+        chunk.position(p + n);
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        chunk = null;
+        channel.close();
+    }
+}
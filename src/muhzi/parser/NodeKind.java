@@ -0,0 +1,34 @@
+package muhzi.parser;
+
+public enum NodeKind {
+    IF("if", false),
+    REPEAT("repeat", false),
+    ASSIGN("assign", false),
+    READ("read", false),
+    WRITE("write", false),
+    OP("op", true),
+    CONST("const", true),
+    ID("id", true);
+
+    private static final NodeKind[] VALUES = values();
+
+    private final String label;
+    private final boolean expression;
+
+    NodeKind(String label, boolean expression) {
+        this.label = label;
+        this.expression = expression;
+    }
+
+    static NodeKind of(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public boolean isExpression() {
+        return expression;
+    }
+}
@@ -0,0 +1,81 @@
+package muhzi.parser;
+
+public final class OptimizationResult {
+    /*
+    * Outcome of TreeOptimizer: the optimized tree, null when no statement
+    * is left, and what was done to get it.
+    */
+
+    private final SyntaxTreeNode tree;
+    private final int nodesBefore;
+    private final int nodesAfter;
+    private final int foldedConstants;
+    private final int simplifiedIdentities;
+    private final int deadBranches;
+    private final int commonSubexpressions;
+
+    OptimizationResult(SyntaxTreeNode tree, int nodesBefore, int nodesAfter, int foldedConstants,
+                       int simplifiedIdentities, int deadBranches, int commonSubexpressions) {
+        this.tree = tree;
+        this.nodesBefore = nodesBefore;
+        this.nodesAfter = nodesAfter;
+        this.foldedConstants = foldedConstants;
+        this.simplifiedIdentities = simplifiedIdentities;
+        this.deadBranches = deadBranches;
+        this.commonSubexpressions = commonSubexpressions;
+    }
+
+    public SyntaxTreeNode getTree() {
+        return tree;
+    }
+
+    public int getNodesBefore() {
+        return nodesBefore;
+    }
+
+    public int getNodesAfter() {
+        return nodesAfter;
+    }
+
+    public int getNodesEliminated() {
+        return nodesBefore - nodesAfter;
+    }
+
+    /*
+    * Operators with constant operands replaced by their value.
+    */
+    public int getFoldedConstants() {
+        return foldedConstants;
+    }
+
+    /*
+    * Operators such as x * 1 and x + 0 replaced by an operand.
+    */
+    public int getSimplifiedIdentities() {
+        return simplifiedIdentities;
+    }
+
+    /*
+    * If statements with a constant condition replaced by the branch that
+    * runs, or removed when none does.
+    */
+    public int getDeadBranches() {
+        return deadBranches;
+    }
+
+    /*
+    * Occurrences of an operator expression already computed earlier in
+    * the same statement, only the largest such expressions are counted.
+    * They are detected, not shared, a tree has no place for shared nodes.
+    */
+    public int getCommonSubexpressions() {
+        return commonSubexpressions;
+    }
+
+    @Override
+    public String toString() {
+        return getNodesEliminated() + " of " + nodesBefore + " nodes eliminated, " +
+                foldedConstants + " constants folded, " + simplifiedIdentities + " identities simplified, " +
+                deadBranches + " dead branches removed, " + commonSubexpressions + " common subexpressions";
+    }
+}
@@ -0,0 +1,347 @@
+package muhzi.parser;
+
+import muhzi.parser.errors.SourceError;
+import muhzi.parser.errors.SyntaxError;
+import muhzi.parser.errors.TokenError;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ParseCache {
+    /*
+    * Parse results keyed by a hash of the source text and its length. A
+    * text seen before gives back its tree, or throws the syntax or token
+    * error it failed with, after hashing it but without scanning it.
+    *
+    * Results are kept in memory up to a total number of tree nodes, the
+    * least recently used ones are evicted first. With a directory the
+    * results are also written there, one file per text, and read back
+    * when they are no longer in memory, so they outlive the process. A
+    * file holds a format and a status byte followed by the tree in the
+    * format of SyntaxTreeWriter, or by the position and the text of the
+    * error.
+    *
+    * A cache made without a parser only holds the trees an
+    * IncrementalParser parses itself and cannot parse a text on a miss.
+    *
+    * Cached trees are shared by everyone who asks for the same text and
+    * must not be updated. The cache is thread safe, two threads missing
+    * the same text at once both parse it.
+    */
+
+    private static final byte FORMAT = 2;
+
+    private static final byte TREE = 0;
+    private static final byte SYNTAX_ERROR = 1;
+    private static final byte TOKEN_ERROR = 2;
+
+    private static final class Key {
+        private final long hash;
+        private final long length;
+
+        private Key(ContentHash contentHash) {
+            this.hash = contentHash.finish();
+            this.length = contentHash.length();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return hash == key.hash && length == key.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash);
+        }
+
+        private String fileName() {
+            return String.format("%016x-%d.ast", hash, length);
+        }
+    }
+
+    private static final class Entry {
+        private final SyntaxTree tree;
+        private final Error error;
+
+        private Entry(SyntaxTree tree, Error error) {
+            this.tree = tree;
+            this.error = error;
+        }
+
+        private int weight() {
+            return tree == null ? 1 : Math.max(tree.size(), 1);
+        }
+
+        private SyntaxTree get() {
+            if (error != null)
+                throw error;
+            return tree;
+        }
+    }
+
+    private final Parser parser;
+    private final long maxNodes;
+    private final Path directory;
+
+    // access ordered, the eldest entry is the least recently used one
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long nodes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ParseCache(long maxNodes) {
+        this(null, maxNodes);
+    }
+
+    public ParseCache(Parser parser, long maxNodes) {
+        this.parser = parser;
+        this.maxNodes = maxNodes;
+        this.directory = null;
+    }
+
+    public ParseCache(Parser parser, long maxNodes, Path directory) throws IOException {
+        this.parser = parser;
+        this.maxNodes = maxNodes;
+        this.directory = Files.createDirectories(directory);
+    }
+
+    public SyntaxTreeNode parse(Path file) throws IOException {
+        requireParser();
+        Key key = new Key(ContentHash.of(file));
+        SyntaxTree tree = lookup(key);
+        if (tree == null) {
+            misses.incrementAndGet();
+            tree = store(key, () -> parser.parse(file));
+        }
+        return tree.getRootNode();
+    }
+
+    public SyntaxTreeNode parse(String source) {
+        requireParser();
+        Key key = new Key(ContentHash.of(source));
+        SyntaxTree tree = lookup(key);
+        if (tree == null) {
+            misses.incrementAndGet();
+            try {
+                tree = store(key, () -> parser.parse(new BufferedReader(new StringReader(source))));
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }
+        return tree.getRootNode();
+    }
+
+    private void requireParser() {
+        if (parser == null)
+            throw new IllegalStateException("Cache has no parser to parse with");
+    }
+
+    private interface Parse {
+        SyntaxTreeNode run() throws IOException;
+    }
+
+    private SyntaxTree store(Key key, Parse parse) throws IOException {
+        SyntaxTree tree;
+        try {
+            SyntaxTreeNode root = parse.run();
+            tree = root == null ? new SyntaxTree() : root.getTree();
+        } catch (SyntaxError | TokenError e) {
+            store(key, new Entry(null, e));
+            throw e;
+        }
+        store(key, new Entry(tree, null));
+        return tree;
+    }
+
+    /*
+    * The part of the cache used by an IncrementalParser, whose text is
+    * hashed in its own buffer and whose trees are updated afterwards: a
+    * hit is returned as a copy and a miss is stored as one.
+    */
+    SyntaxTree lookupCopy(ContentHash contentHash) {
+        SyntaxTree tree = lookup(new Key(contentHash));
+        if (tree == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        return tree.copy();
+    }
+
+    void storeCopy(ContentHash contentHash, SyntaxTree tree) {
+        store(new Key(contentHash), new Entry(tree.copy(), null));
+    }
+
+    void storeError(ContentHash contentHash, Error error) {
+        store(new Key(contentHash), new Entry(null, error));
+    }
+
+    private SyntaxTree lookup(Key key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            hits.incrementAndGet();
+            return entry.get();
+        }
+
+        entry = read(key);
+        if (entry == null)
+            return null;
+
+        diskHits.incrementAndGet();
+        remember(key, entry);
+        return entry.get();
+    }
+
+    private void store(Key key, Entry entry) {
+        remember(key, entry);
+        write(key, entry);
+    }
+
+    private synchronized void remember(Key key, Entry entry) {
+        if (entry.weight() > maxNodes)
+            return;
+
+        Entry previous = entries.put(key, entry);
+        if (previous != null)
+            nodes -= previous.weight();
+        nodes += entry.weight();
+
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while (nodes > maxNodes) {
+            nodes -= eldest.next().getValue().weight();
+            eldest.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private Entry read(Key key) {
+        if (directory == null)
+            return null;
+
+        Path file = directory.resolve(key.fileName());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.remaining() < 2 || in.get() != FORMAT)
+                return null;
+
+            byte status = in.get();
+            switch (status) {
+                case TREE:
+                    return new Entry(SyntaxTreeReader.read(in), null);
+                case SYNTAX_ERROR:
+                case TOKEN_ERROR:
+                    return new Entry(null, readError(status, in));
+                default:
+                    return null;
+            }
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            // a damaged file is a miss, the next store replaces it
+            return null;
+        }
+    }
+
+    private void write(Key key, Entry entry) {
+        if (directory == null)
+            return;
+
+        Path file = directory.resolve(key.fileName());
+        Path temp = null;
+        try {
+            // written aside and moved in place, readers never see half a file
+            temp = Files.createTempFile(directory, key.fileName(), ".tmp");
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                out.write(FORMAT);
+                if (entry.error instanceof TokenError) {
+                    out.write(TOKEN_ERROR);
+                    writeError(out, (TokenError) entry.error, ((TokenError) entry.error).getToken());
+                } else if (entry.error != null) {
+                    out.write(SYNTAX_ERROR);
+                    writeError(out, (SyntaxError) entry.error, entry.error.getMessage());
+                } else {
+                    out.write(TREE);
+                    new SyntaxTreeWriter(out).write(entry.tree.getRootNode());
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+            try {
+                if (temp != null)
+                    Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static void writeError(OutputStream out, SourceError error, String text) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(error.getOffset());
+        data.writeInt(error.getLine());
+        data.writeInt(error.getColumn());
+        data.write(text.getBytes(StandardCharsets.UTF_8));
+        data.flush();
+    }
+
+    private static SourceError readError(byte status, ByteBuffer in) throws IOException {
+        if (in.remaining() < 12)
+            throw new IOException("Corrupt cached error");
+        int offset = in.getInt();
+        int line = in.getInt();
+        int column = in.getInt();
+        String text = StandardCharsets.UTF_8.decode(in).toString();
+        return status == TOKEN_ERROR ? new TokenError(text, offset, line, column)
+                : new SyntaxError(text, offset, line, column);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d hits, %d disk hits, %d misses, %d evictions",
+                getHits(), getDiskHits(), getMisses(), getEvictions());
+    }
+}
@@ -0,0 +1,548 @@
+package muhzi.parser;
+
+import muhzi.parser.errors.Diagnostic;
+import muhzi.parser.errors.ParserError;
+import muhzi.parser.errors.SyntaxError;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.logging.Level;
+
+final class ParseContext {
+    /*
+    * Holds the state of a single parse, the token stream and the tree
+    * being built. A context is owned by one thread at a time and is
+    * recycled by Parser once the parse is over. The current token is read
+    * in place from the buffer of the stream, no Token object is created.
+    *
+    * Every match method returns the node it built, nodes are only created
+    * once their production has been recognized and are linked bottom-up,
+    * so the tree needs no placeholders and no cleanup pass.
+    *
+    * The syntax tree is generated based on the following grammar:
+    *
+    * program -> stmt-sequence
+    * stmt-sequence -> stmt-sequence ; statement | statement
+    * statement -> if-stmt | repeat-stmt | assign-stmt | read-stmt | write-stmt
+    * if-stmt -> if exp then stmt-sequence end
+        | if exp then stmt-sequence else stmt-sequence end
+    * repeat-stmt -> repeat stmt-sequence until exp
+    * assign-stmt -> identifier := exp
+    * read-stmt -> read identifier
+    * write-stmt -> write exp
+    * exp -> simple-exp comparison-op simple-exp | simple-exp
+    * comparison-op -> = | <
+    * simple-exp -> simple-exp addop term | term
+    * addop -> + | -
+    * term -> term mulop factor | factor
+    * mulop -> * | /
+    * factor -> (exp) | number | identifier
+    *
+    * Expressions are not parsed one level of the grammar at a time but by
+    * precedence climbing over the OPERATORS table, which holds every
+    * binary operator with its precedence and whether it associates to the
+    * left. Chains of operators of the same precedence are parsed in a
+    * loop, a right operand is parsed one call deeper and comes back at
+    * the first operator that does not bind tighter. Each op node is built
+    * once its left operand is, a new operator is one more table entry.
+    *
+    * A recovering parse does not stop at the first error. Each error is
+    * recorded with its position, a statement that fails is dropped and
+    * tokens are skipped up to the next ;, end, until or else, where the
+    * enclosing stmt-sequence carries on. A missing ; between statements
+    * is reported and the next statement parsed anyway, a bad character
+    * is reported and skipped.
+    *
+    * A measuring context also counts the tokens it goes through by kind,
+    * for Parser to hand over to a ParseMetricsRegistry.
+    */
+
+    private static final class Operator {
+        private final int precedence;
+        private final boolean associative;
+        private final String trace;
+
+        private Operator(int precedence, boolean associative, String trace) {
+            this.precedence = precedence;
+            this.associative = associative;
+            this.trace = trace + " is found";
+        }
+    }
+
+    // indexed by TokenKind ordinal, null for tokens that are not operators
+    private static final Operator[] OPERATORS = new Operator[TokenKind.values().length];
+
+    static {
+        // a comparison cannot be an operand of another one
+        operator(TokenKind.LESS_THAN, 1, false, "comparison-op");
+        operator(TokenKind.EQUAL, 1, false, "comparison-op");
+        operator(TokenKind.PLUS, 2, true, "addop");
+        operator(TokenKind.MINUS, 2, true, "addop");
+        operator(TokenKind.TIMES, 3, true, "mulop");
+        operator(TokenKind.OVER, 3, true, "mulop");
+    }
+
+    private static void operator(TokenKind kind, int precedence, boolean associative, String trace) {
+        OPERATORS[kind.ordinal()] = new Operator(precedence, associative, trace);
+    }
+
+    private final ParseTraceListener listener;
+    private final boolean tracing;
+    private final boolean measuring;
+    private final TokenStream tokens = new TokenStream(1);
+    private final int[] tokenCounts = new int[TokenKind.values().length];
+
+    private int baseOffset;
+    private int baseSize;
+    private int previousEnd;
+    private int depth;
+    private int maxDepth;
+    private SyntaxTree syntaxTree;
+
+    // set only while recovering
+    private List<Diagnostic> diagnostics;
+
+    ParseContext(ParseTraceListener listener) {
+        this(listener, false);
+    }
+
+    ParseContext(ParseTraceListener listener, boolean measuring) {
+        this.listener = listener;
+        this.tracing = listener != ParseTraceListener.NONE;
+        this.measuring = measuring;
+    }
+
+    SyntaxTreeNode parse(Reader reader) {
+        SyntaxTree tree = new SyntaxTree();
+        tree.setRoot(parse(tree, reader, 0));
+        tree.setLines(takeLines());
+        return tree.getRootNode();
+    }
+
+    ParseResult parseRecovering(Reader reader) {
+        diagnostics = new ArrayList<>();
+        tokens.setErrorHandler(e -> report(e.getMessage(), e.getOffset()));
+        try {
+            SyntaxTree tree = new SyntaxTree();
+            tree.setRoot(parse(tree, reader, 0));
+            tree.setLines(takeLines());
+            return new ParseResult(tree.getRootNode(), diagnostics);
+        } finally {
+            tokens.setErrorHandler(null);
+            diagnostics = null;
+        }
+    }
+
+    /*
+    * Parses the program read from reader into an existing tree and returns
+    * its first statement, node spans start at baseOffset. The new nodes
+    * are not linked to anything already in the tree.
+    */
+    int parse(SyntaxTree tree, Reader reader, int baseOffset) {
+        begin(tree, reader, baseOffset);
+        return matchProgram();
+    }
+
+    /*
+    * As parse, for the text of statements taken out of a program, which
+    * is parsed and traced as a stmt-sequence, not as a program.
+    */
+    int parseStatements(SyntaxTree tree, Reader reader, int baseOffset) {
+        begin(tree, reader, baseOffset);
+        return matchStmtSequence(true);
+    }
+
+    private void begin(SyntaxTree tree, Reader reader, int baseOffset) {
+        syntaxTree = tree;
+        tokens.reset(reader, baseOffset);
+        this.baseOffset = baseOffset;
+        baseSize = tree.size();
+        previousEnd = baseOffset;
+        depth = 0;
+        maxDepth = 0;
+        if (measuring)
+            Arrays.fill(tokenCounts, 0);
+        try {
+            tokens.ensure(0);
+        } catch (IOException e) {
+            throw readError(e);
+        }
+    }
+
+    /*
+    * Returns the line starts of the text parsed from the start to the end
+    * by the last parse.
+    */
+    LineMap takeLines() {
+        return tokens.takeLines();
+    }
+
+    /*
+    * Returns what the last parse went through, up to the error that ended
+    * it if any. Only a measuring context counts tokens.
+    */
+    ParseMetrics measure(String source, long parseNanos, int errors) {
+        return new ParseMetrics(source, tokens.offset() - baseOffset, tokenCounts.clone(),
+                syntaxTree.size() - baseSize, maxDepth, parseNanos, errors);
+    }
+
+    /*
+    * Drops every reference to the last input and tree so a pooled context
+    * does not keep them alive.
+    */
+    void release() {
+        tokens.reset(null, 0);
+        syntaxTree = null;
+    }
+
+    private void LOG(String message, Level level) {
+        if (tracing)
+            listener.trace(level, message);
+        if (level == Level.SEVERE) {
+            int offset = tokens.offset();
+            if (diagnostics != null)
+                report(message, offset);
+            LineMap lines = tokens.lines();
+            throw new SyntaxError(message, offset, lines.getLine(offset), lines.getColumn(offset));
+        }
+    }
+
+    private void report(String message, int offset) {
+        // one error per position, the first one says the most
+        int last = diagnostics.size() - 1;
+        if (last >= 0 && diagnostics.get(last).getOffset() == offset)
+            return;
+
+        LineMap lines = tokens.lines();
+        diagnostics.add(new Diagnostic(message, offset, lines.getLine(offset), lines.getColumn(offset)));
+    }
+
+    private int matchProgram() {
+        LOG("program is found", Level.INFO);
+        return matchStmtSequence(true);
+    }
+
+    private int matchStmtSequence(boolean ensureAllMatched) {
+        if (diagnostics != null)
+            return recoverStmtSequence(ensureAllMatched);
+        LOG("stmt-sequence is found", Level.INFO);
+
+        int first = matchStatement();
+        int last = first;
+        while (tokens.kind() == TokenKind.SEMICOLON) {
+            match(TokenKind.SEMICOLON);
+            int statement = matchStatement();
+            syntaxTree.setNext(last, statement);
+            last = statement;
+        }
+
+        if (ensureAllMatched && tokens.kind() != TokenKind.EOF) {
+            LOG("Expected ; before new statement ["+tokens.value()+"...]", Level.SEVERE);
+        }
+        return first;
+    }
+
+    /*
+    * The recovering stmt-sequence, which ends at EOF and, when nested, at
+    * the end, until or else of the enclosing statement. Failed statements
+    * are left out of it.
+    */
+    private int recoverStmtSequence(boolean ensureAllMatched) {
+        LOG("stmt-sequence is found", Level.INFO);
+
+        int first = matchStatement();
+        int last = first;
+        for (;;) {
+            TokenKind kind = tokens.kind();
+            if (kind == TokenKind.EOF)
+                break;
+
+            if (kind == TokenKind.SEMICOLON) {
+                match(TokenKind.SEMICOLON);
+            } else if (kind == TokenKind.END || kind == TokenKind.UNTIL || kind == TokenKind.ELSE) {
+                if (!ensureAllMatched)
+                    break;
+                // a stray terminator at the top level
+                reportMissingSemicolon();
+                match(kind);
+                continue;
+            } else {
+                reportMissingSemicolon();
+                if (!startsStatement(kind)) {
+                    synchronize();
+                    continue;
+                }
+            }
+
+            int statement = matchStatement();
+            if (statement == SyntaxTree.NONE)
+                continue;
+            if (last == SyntaxTree.NONE) {
+                first = statement;
+            } else {
+                syntaxTree.setNext(last, statement);
+            }
+            last = statement;
+        }
+        return first;
+    }
+
+    private void reportMissingSemicolon() {
+        String message = "Expected ; before new statement ["+tokens.value()+"...]";
+        if (tracing)
+            listener.trace(Level.SEVERE, message);
+        report(message, tokens.offset());
+    }
+
+    private static boolean startsStatement(TokenKind kind) {
+        switch (kind) {
+            case IF:
+            case REPEAT:
+            case IDENTIFIER:
+            case READ:
+            case WRITE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /*
+    * Skips tokens up to the next one a stmt-sequence can go on from.
+    */
+    private void synchronize() {
+        for (;;) {
+            switch (tokens.kind()) {
+                case SEMICOLON:
+                case END:
+                case UNTIL:
+                case ELSE:
+                case EOF:
+                    return;
+                default:
+                    previousEnd = tokens.end();
+                    nextToken();
+            }
+        }
+    }
+
+    private int matchStatement() {
+        if (diagnostics == null)
+            return parseStatement();
+
+        int enclosing = depth;
+        try {
+            return parseStatement();
+        } catch (SyntaxError e) {
+            depth = enclosing;
+            synchronize();
+            return SyntaxTree.NONE;
+        }
+    }
+
+    private int parseStatement() {
+        LOG("statement is found", Level.INFO);
+
+        int start = tokens.offset();
+        int node;
+        switch (tokens.kind()) {
+            case IF:
+                node = matchIfStmt();
+                break;
+            case REPEAT:
+                node = matchRepeatStmt();
+                break;
+            case IDENTIFIER:
+                node = matchAssignStmt();
+                break;
+            case READ:
+                node = matchReadStmt();
+                break;
+            case WRITE:
+                node = matchWriteStmt();
+                break;
+            default:
+                LOG("Undefined statement starting with ["+tokens.value()+"]", Level.SEVERE);
+                return SyntaxTree.NONE;
+        }
+        syntaxTree.setSpan(node, start, previousEnd);
+        return node;
+    }
+
+    private int matchWriteStmt() {
+        LOG("write-stmt is found", Level.INFO);
+
+        match(TokenKind.WRITE);
+        int node = syntaxTree.addNode(NodeKind.WRITE);
+        syntaxTree.addChild(node, matchExp());
+        return node;
+    }
+
+    private int matchReadStmt() {
+        LOG("read-stmt is found", Level.INFO);
+
+        match(TokenKind.READ);
+        String identifier = tokens.value();
+        match(TokenKind.IDENTIFIER);
+
+        int node = syntaxTree.addNode(NodeKind.READ);
+        syntaxTree.setValue(node, identifier);
+        return node;
+    }
+
+    private int matchAssignStmt() {
+        LOG("assign-stmt is found", Level.INFO);
+
+        String identifier = tokens.value();
+        match(TokenKind.IDENTIFIER);
+        match(TokenKind.ASSIGN);
+
+        int node = syntaxTree.addNode(NodeKind.ASSIGN);
+        syntaxTree.setValue(node, identifier);
+        syntaxTree.addChild(node, matchExp());
+        return node;
+    }
+
+    private int matchRepeatStmt() {
+        LOG("repeat-stmt is found", Level.INFO);
+
+        enter();
+        match(TokenKind.REPEAT);
+        int node = syntaxTree.addNode(NodeKind.REPEAT);
+        addSequence(node, matchStmtSequence(false));
+        match(TokenKind.UNTIL);
+        syntaxTree.addChild(node, matchExp());
+        depth--;
+        return node;
+    }
+
+    private int matchIfStmt() {
+        LOG("if-stmt is found", Level.INFO);
+
+        enter();
+        match(TokenKind.IF);
+        int node = syntaxTree.addNode(NodeKind.IF);
+        syntaxTree.addChild(node, matchExp());
+        match(TokenKind.THEN);
+        addSequence(node, matchStmtSequence(false));
+
+        if (tokens.kind() == TokenKind.ELSE) {
+            match(TokenKind.ELSE);
+            addSequence(node, matchStmtSequence(false));
+        }
+        match(TokenKind.END);
+        depth--;
+        return node;
+    }
+
+    // nesting that takes up parser stack, matchStatement puts the depth
+    // back when a statement fails while recovering
+    private void enter() {
+        if (++depth > maxDepth)
+            maxDepth = depth;
+    }
+
+    // a recovered stmt-sequence may have lost all of its statements
+    private void addSequence(int node, int first) {
+        if (first != SyntaxTree.NONE)
+            syntaxTree.addChild(node, first);
+    }
+
+    private int matchExp() {
+        LOG("exp is found", Level.INFO);
+        return matchOperand(1);
+    }
+
+    /*
+    * Parses an expression whose operators bind at least as tightly as
+    * minPrecedence, it ends at the first token that is not such an
+    * operator. A non-associative operator raises the bar for the rest
+    * of the chain, so a second comparison is left to end the expression.
+    */
+    private int matchOperand(int minPrecedence) {
+        int start = tokens.offset();
+        int node = matchFactor();
+        for (;;) {
+            Operator operator = OPERATORS[tokens.kind().ordinal()];
+            if (operator == null || operator.precedence < minPrecedence)
+                return node;
+
+            node = matchOp(operator, node);
+            syntaxTree.addChild(node, matchOperand(operator.precedence + 1));
+            syntaxTree.setSpan(node, start, previousEnd);
+            if (!operator.associative)
+                minPrecedence = operator.precedence + 1;
+        }
+    }
+
+    private int matchOp(Operator operator, int leftOperand) {
+        LOG(operator.trace, Level.INFO);
+
+        TokenKind kind = tokens.kind();
+        match(kind);
+
+        int node = syntaxTree.addNode(NodeKind.OP);
+        syntaxTree.setValue(node, kind.getText());
+        syntaxTree.addChild(node, leftOperand);
+        return node;
+    }
+
+    private int matchFactor() {
+        LOG("factor is found", Level.INFO);
+
+        int node;
+        switch (tokens.kind()) {
+            case LEFT_PAREN:
+                enter();
+                match(TokenKind.LEFT_PAREN);
+                node = matchExp();
+                match(TokenKind.RIGHT_PAREN);
+                depth--;
+                return node;
+            case IDENTIFIER:
+                node = syntaxTree.addNode(NodeKind.ID);
+                break;
+            case NUMBER:
+                node = syntaxTree.addNode(NodeKind.CONST);
+                break;
+            default:
+                LOG("Invalid token for factor: ["+tokens.value()+"]", Level.SEVERE);
+                return SyntaxTree.NONE;
+        }
+        syntaxTree.setValue(node, tokens.value());
+        syntaxTree.setSpan(node, tokens.offset(), tokens.end());
+        match(tokens.kind());
+        return node;
+    }
+
+    private void match(TokenKind kind) {
+        if (tokens.kind() == kind) {
+            previousEnd = tokens.end();
+            nextToken();
+        } else {
+            LOG("Unexpected token: [" +tokens.value()+"], expected: ["+kind.getText()+"]", Level.SEVERE);
+        }
+    }
+
+    private void nextToken() {
+        if (measuring)
+            tokenCounts[tokens.kind().ordinal()]++;
+        try {
+            tokens.advance();
+        } catch (IOException e) {
+            throw readError(e);
+        }
+    }
+
+    private static RuntimeException readError(IOException e) {
+        if (e instanceof InterruptedIOException)
+            throw new CancellationException("Parse cancelled");
+        e.printStackTrace();
+        throw new ParserError();
+    }
+}
@@ -0,0 +1,79 @@
+package muhzi.parser;
+
+public final class ParseMetrics {
+    /*
+    * What a single parse went through, handed to a ParseMetricsRegistry.
+    * Scanning is driven by the parser a token at a time, so its time is
+    * part of the parse time and not measured apart. The depth is the
+    * deepest nesting of if and repeat bodies and parentheses, the one
+    * that grows the stack of the parser.
+    */
+
+    private final String source;
+    private final long characters;
+    private final int[] tokens;
+    private final int nodes;
+    private final int maxDepth;
+    private final long parseNanos;
+    private final int errors;
+
+    ParseMetrics(String source, long characters, int[] tokens, int nodes, int maxDepth,
+                 long parseNanos, int errors) {
+        this.source = source;
+        this.characters = characters;
+        this.tokens = tokens;
+        this.nodes = nodes;
+        this.maxDepth = maxDepth;
+        this.parseNanos = parseNanos;
+        this.errors = errors;
+    }
+
+    /*
+    * The file parsed, null for any other reader.
+    */
+    public String getSource() {
+        return source;
+    }
+
+    public long getCharacters() {
+        return characters;
+    }
+
+    public int getTokenCount(TokenKind kind) {
+        return tokens[kind.ordinal()];
+    }
+
+    public int getTokenCount() {
+        int total = 0;
+        for (int count : tokens) {
+            total += count;
+        }
+        return total;
+    }
+
+    public int getNodes() {
+        return nodes;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    /*
+    * The errors a recovering parse reported, 1 for a parse that failed.
+    */
+    public int getErrors() {
+        return errors;
+    }
+
+    @Override
+    public String toString() {
+        return (source == null ? "" : source + ": ") + characters + " characters, " +
+                getTokenCount() + " tokens, " + nodes + " nodes, depth " + maxDepth + ", " +
+                parseNanos / 1000 + " us" + (errors == 0 ? "" : ", " + errors + " errors");
+    }
+}
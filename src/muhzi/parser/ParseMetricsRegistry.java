@@ -0,0 +1,267 @@
+package muhzi.parser;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class ParseMetricsRegistry implements ParseMetricsRegistryMXBean {
+    /*
+    * Adds up the metrics of every parse of the Parsers it is given to, and
+    * of every tree the GUI draws, into totals and histograms. It costs a
+    * few counters per token, unlike the trace log it can stay on in
+    * production, the histograms and the slowest and deepest parses seen
+    * point out the inputs that need a closer look.
+    *
+    * Once registered, the registry is also visible through JMX under
+    * muhzi.parser:type=ParseMetrics,name=<name>. Recording may happen from
+    * any number of threads.
+    */
+
+    private static final TokenKind[] KINDS = TokenKind.values();
+
+    private volatile Histogram characters;
+    private volatile Histogram tokens;
+    private volatile Histogram nodes;
+    private volatile Histogram depths;
+    private volatile Histogram parseNanos;
+    private volatile Histogram nanosPerCharacter;
+    private volatile Histogram drawNanos;
+    private final AtomicLongArray tokenCounts = new AtomicLongArray(KINDS.length);
+    private final LongAdder failedParses = new LongAdder();
+
+    private ParseMetrics slowest;
+    private ParseMetrics deepest;
+    private ObjectName objectName;
+
+    public ParseMetricsRegistry() {
+        reset();
+    }
+
+    public void record(ParseMetrics metrics) {
+        characters.record(metrics.getCharacters());
+        tokens.record(metrics.getTokenCount());
+        nodes.record(metrics.getNodes());
+        depths.record(metrics.getMaxDepth());
+        parseNanos.record(metrics.getParseNanos());
+        if (metrics.getCharacters() > 0)
+            nanosPerCharacter.record(metrics.getParseNanos() / metrics.getCharacters());
+        for (int i = 0; i < KINDS.length; i++) {
+            int count = metrics.getTokenCount(KINDS[i]);
+            if (count != 0)
+                tokenCounts.addAndGet(i, count);
+        }
+        if (metrics.getErrors() != 0)
+            failedParses.increment();
+
+        synchronized (this) {
+            if (slowest == null || metrics.getParseNanos() > slowest.getParseNanos())
+                slowest = metrics;
+            if (deepest == null || metrics.getMaxDepth() > deepest.getMaxDepth())
+                deepest = metrics;
+        }
+    }
+
+    /*
+    * Records the time taken to lay out and paint a tree.
+    */
+    public void recordDrawing(long nanos) {
+        drawNanos.record(nanos);
+    }
+
+    public Histogram getCharacterHistogram() {
+        return characters;
+    }
+
+    public Histogram getTokenHistogram() {
+        return tokens;
+    }
+
+    public Histogram getNodeHistogram() {
+        return nodes;
+    }
+
+    public Histogram getDepthHistogram() {
+        return depths;
+    }
+
+    public Histogram getParseNanosHistogram() {
+        return parseNanos;
+    }
+
+    public Histogram getDrawNanosHistogram() {
+        return drawNanos;
+    }
+
+    public synchronized ParseMetrics getSlowest() {
+        return slowest;
+    }
+
+    public synchronized ParseMetrics getDeepest() {
+        return deepest;
+    }
+
+    @Override
+    public long getParses() {
+        return parseNanos.getCount();
+    }
+
+    @Override
+    public long getFailedParses() {
+        return failedParses.sum();
+    }
+
+    @Override
+    public long getCharacters() {
+        return characters.getSum();
+    }
+
+    @Override
+    public long getTokens() {
+        return tokens.getSum();
+    }
+
+    @Override
+    public long getNodes() {
+        return nodes.getSum();
+    }
+
+    @Override
+    public Map<String, Long> getTokenCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < KINDS.length; i++) {
+            counts.put(KINDS[i].name(), tokenCounts.get(i));
+        }
+        return counts;
+    }
+
+    @Override
+    public long getMaxDepth() {
+        return depths.getMax();
+    }
+
+    @Override
+    public double getParseMicrosMean() {
+        return parseNanos.getMean() / 1000;
+    }
+
+    @Override
+    public long getParseMicrosP50() {
+        return parseNanos.getPercentile(0.5) / 1000;
+    }
+
+    @Override
+    public long getParseMicrosP99() {
+        return parseNanos.getPercentile(0.99) / 1000;
+    }
+
+    @Override
+    public long getParseMicrosMax() {
+        return parseNanos.getMax() / 1000;
+    }
+
+    @Override
+    public long getParseNanosPerCharacterP99() {
+        return nanosPerCharacter.getPercentile(0.99);
+    }
+
+    @Override
+    public long getDraws() {
+        return drawNanos.getCount();
+    }
+
+    @Override
+    public long getDrawMicrosP50() {
+        return drawNanos.getPercentile(0.5) / 1000;
+    }
+
+    @Override
+    public long getDrawMicrosP99() {
+        return drawNanos.getPercentile(0.99) / 1000;
+    }
+
+    @Override
+    public long getDrawMicrosMax() {
+        return drawNanos.getMax() / 1000;
+    }
+
+    @Override
+    public String getSlowestParse() {
+        ParseMetrics metrics = getSlowest();
+        return metrics == null ? null : metrics.toString();
+    }
+
+    @Override
+    public String getDeepestParse() {
+        ParseMetrics metrics = getDeepest();
+        return metrics == null ? null : metrics.toString();
+    }
+
+    /*
+    * Starts over from nothing, parses recording at the same time may be
+    * counted before or after.
+    */
+    @Override
+    public synchronized void reset() {
+        characters = new Histogram();
+        tokens = new Histogram();
+        nodes = new Histogram();
+        depths = new Histogram();
+        parseNanos = new Histogram();
+        nanosPerCharacter = new Histogram();
+        drawNanos = new Histogram();
+        for (int i = 0; i < KINDS.length; i++) {
+            tokenCounts.set(i, 0);
+        }
+        failedParses.reset();
+        slowest = null;
+        deepest = null;
+    }
+
+    public synchronized void register(String name) throws JMException {
+        if (objectName != null)
+            throw new IllegalStateException("Already registered as " + objectName);
+        ObjectName registered = new ObjectName("muhzi.parser:type=ParseMetrics,name=" + name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, registered);
+        objectName = registered;
+    }
+
+    public synchronized void unregister() throws JMException {
+        if (objectName == null)
+            return;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.unregisterMBean(objectName);
+        objectName = null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(getParses()).append(" parses, ").append(getFailedParses()).append(" failed, ")
+                .append(getCharacters()).append(" characters, ").append(getTokens()).append(" tokens, ")
+                .append(getNodes()).append(" nodes\n");
+        builder.append("  parse us:   ").append(micros(parseNanos)).append('\n');
+        builder.append("  characters: ").append(characters).append('\n');
+        builder.append("  nodes:      ").append(nodes).append('\n');
+        builder.append("  depth:      ").append(depths);
+        if (drawNanos.getCount() != 0)
+            builder.append("\n  draw us:    ").append(micros(drawNanos));
+        ParseMetrics metrics = getSlowest();
+        if (metrics != null)
+            builder.append("\n  slowest:    ").append(metrics);
+        metrics = getDeepest();
+        if (metrics != null)
+            builder.append("\n  deepest:    ").append(metrics);
+        return builder.toString();
+    }
+
+    private static String micros(Histogram histogram) {
+        return String.format("mean %.1f, p50 %d, p99 %d, max %d",
+                histogram.getMean() / 1000, histogram.getPercentile(0.5) / 1000,
+                histogram.getPercentile(0.99) / 1000, histogram.getMax() / 1000);
+    }
+}
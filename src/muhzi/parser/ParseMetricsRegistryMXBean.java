@@ -0,0 +1,49 @@
+package muhzi.parser;
+
+import java.util.Map;
+
+public interface ParseMetricsRegistryMXBean {
+    /*
+    * The view of a ParseMetricsRegistry JMX clients such as jconsole get,
+    * times are in microseconds and percentiles are bucket bounds (see
+    * Histogram).
+    */
+
+    long getParses();
+
+    long getFailedParses();
+
+    long getCharacters();
+
+    long getTokens();
+
+    long getNodes();
+
+    Map<String, Long> getTokenCounts();
+
+    long getMaxDepth();
+
+    double getParseMicrosMean();
+
+    long getParseMicrosP50();
+
+    long getParseMicrosP99();
+
+    long getParseMicrosMax();
+
+    long getParseNanosPerCharacterP99();
+
+    long getDraws();
+
+    long getDrawMicrosP50();
+
+    long getDrawMicrosP99();
+
+    long getDrawMicrosMax();
+
+    String getSlowestParse();
+
+    String getDeepestParse();
+
+    void reset();
+}
@@ -0,0 +1,33 @@
+package muhzi.parser;
+
+import muhzi.parser.errors.Diagnostic;
+
+import java.util.Collections;
+import java.util.List;
+
+public final class ParseResult {
+    /*
+    * Outcome of a recovering parse: the tree of every statement that
+    * parsed, null when none did, and the errors found in source order.
+    */
+
+    private final SyntaxTreeNode tree;
+    private final List<Diagnostic> diagnostics;
+
+    ParseResult(SyntaxTreeNode tree, List<Diagnostic> diagnostics) {
+        this.tree = tree;
+        this.diagnostics = Collections.unmodifiableList(diagnostics);
+    }
+
+    public SyntaxTreeNode getTree() {
+        return tree;
+    }
+
+    public List<Diagnostic> getDiagnostics() {
+        return diagnostics;
+    }
+
+    public boolean hasErrors() {
+        return !diagnostics.isEmpty();
+    }
+}
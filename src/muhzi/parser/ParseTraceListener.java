@@ -0,0 +1,20 @@
+package muhzi.parser;
+
+import java.util.logging.Level;
+
+public interface ParseTraceListener {
+    /*
+    * Receives a message for every grammar production the parser matches
+    * (Level.INFO) and for the syntax error that aborts a parse
+    * (Level.SEVERE). Implementations may be called from several parsing
+    * threads at once.
+    */
+
+    ParseTraceListener NONE = new ParseTraceListener() {
+        @Override
+        public void trace(Level level, String message) {
+        }
+    };
+
+    void trace(Level level, String message);
+}
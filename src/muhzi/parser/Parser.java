@@ -1,327 +1,134 @@
 package muhzi.parser;
 
 import muhzi.parser.errors.ParserError;
-import muhzi.parser.errors.SyntaxError;
+import muhzi.parser.errors.SourceError;
 
 import java.io.BufferedReader;
-import java.io.File;
 import java.io.IOException;
-import java.util.Date;
-import java.util.logging.*;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 public class Parser {
     /*
-    * The Parser component generates a syntax tree for the program,
-    * based on the following grammar:
+    * The Parser is a stateless facade, a single instance can be shared by
+    * any number of threads parsing independent programs. The state of each
+    * parse lives in a ParseContext (see there for the grammar) that is
+    * taken from a small lock-free pool and handed back once the parse is
+    * over, so the scanner buffers are reused across parses.
     *
-    * program -> stmt-sequence
-    * stmt-sequence -> stmt-sequence ; statement | statement
-    * statement -> if-stmt | repeat-stmt | assign-stmt | read-stmt | write-stmt
-    * if-stmt -> if exp then stmt-sequence end
-        | if exp then stmt-sequence else stmt-sequence end
-    * repeat-stmt -> repeat stmt-sequence until exp
-    * assign-stmt -> identifier := exp
-    * read-stmt -> read identifier
-    * write-stmt -> write exp
-    * exp -> simple-exp comparison-op simple-exp | simple-exp
-    * comparison-op -> = | <
-    * simple-exp -> simple-exp addop term | term
-    * addop -> + | -
-    * term -> term mulop factor | factor
-    * mulop -> * | /
-    * factor -> (exp) | number | identifier
+    * Given a ParseMetricsRegistry, the metrics of every parse, the ones
+    * that fail included, are recorded there.
     */
 
-    private static Logger logger = Logger.getLogger(Parser.class.getName());
-    static {
-        try {
-            FileHandler fh =
-                    new FileHandler(System.getProperty("user.dir") +
-                                    File.separator + "parser_output.txt");
-            fh.setFormatter(new Formatter() {
-                private static final String format = "[%1$tF %1$tT] [%2$s] %3$s %n";
-
-                @Override
-                public String format(LogRecord record) {
-                    return String.format(format,
-                            new Date(record.getMillis()),
-                            record.getLevel().getLocalizedName(),
-                            record.getMessage());
-                }
-            });
-            logger.addHandler(fh);
-        } catch (IOException e) {
-            e.printStackTrace();
-            throw new ParserError();
-        }
-    }
-
-    private Token currentToken;
-    private Scanner scanner;
-    private SyntaxTreeNode tree;
-
-    public SyntaxTreeNode parse(BufferedReader br) {
-        SyntaxTreeNode root = tree = new SyntaxTreeNode("NIL");
-        scanner = new Scanner(br);
-        try {
-            currentToken = scanner.getNextToken();
-        } catch (IOException e) {
-            e.printStackTrace();
-            throw new ParserError();
-        }
-
-        matchProgram();
-        SyntaxTreeNode.removeNilNodes(root);
-        return root;
-    }
-
-    private void LOG(String message, Level level) {
-        if (level == Level.SEVERE) {
-            logger.severe(message);
-            throw new SyntaxError(message);
-        } else {
-            logger.info(message);
-        }
-    }
-
-    private void matchProgram() {
-        LOG("program is found", Level.INFO);
-        matchStmtSequence(true);
-    }
+    private static final int POOL_SIZE =
+            Integer.highestOneBit(2 * Runtime.getRuntime().availableProcessors() - 1) << 1;
 
-    private void matchStmtSequence(boolean ensureAllMatched) {
-        LOG("stmt-sequence is found", Level.INFO);
+    private final ParseTraceListener listener;
+    private final ParseMetricsRegistry metrics;
+    private final AtomicReferenceArray<ParseContext> pool = new AtomicReferenceArray<>(POOL_SIZE);
 
-        matchStatement();
-        while (currentToken.getValue().equals(";")) {
-            match(";");
-            matchStatement();
-        }
-
-        String tk_val = currentToken.getValue();
-        if (ensureAllMatched && !tk_val.equals("")) {
-            LOG("Expected ; before new statement ["+tk_val+"...]", Level.SEVERE);
-        }
-    }
-
-    private void matchStatement() {
-        LOG("statement is found", Level.INFO);
-
-        String tk_val = currentToken.getValue();
-        String tk_type = currentToken.getType();
-        if (tk_val.equals("if")) {
-            matchIfStmt();
-        } else if (tk_val.equals("repeat")) {
-            matchRepeatStmt();
-        } else if (tk_type.equals("identifier")) {
-            matchAssignStmt();
-        } else if (tk_val.equals("read")) {
-            matchReadStmt();
-        } else if (tk_val.equals("write")) {
-            matchWriteStmt();
-        } else {
-            LOG("Undefined statement starting with ["+tk_val+"]", Level.SEVERE);
-        }
+    public Parser() {
+        this(ParseTraceListener.NONE);
     }
 
-    private void matchWriteStmt() {
-        LOG("write-stmt is found", Level.INFO);
-
-        SyntaxTreeNode currentNode = tree;
-        currentNode.setLabel("write");
-
-        match("write");
-        advanceToAChild(currentNode);
-        matchExp();
-
-        advanceToNextSameLevelNode(currentNode);
+    public Parser(ParseTraceListener listener) {
+        this(listener, null);
     }
 
-    private void matchReadStmt() {
-        LOG("read-stmt is found", Level.INFO);
-
-        tree.setLabel("read");
-        match("read");
-        tree.setValue(currentToken.getValue());
-        match("identifier");
-
-        advanceToNextSameLevelNode(tree);
+    public Parser(ParseTraceListener listener, ParseMetricsRegistry metrics) {
+        this.listener = listener;
+        this.metrics = metrics;
     }
 
-    private void matchAssignStmt() {
-        LOG("assign-stmt is found", Level.INFO);
-
-        SyntaxTreeNode currentNode = tree;
-        currentNode.setLabel("assign");
-        currentNode.setValue(currentToken.getValue());
-
-        match("identifier");
-        match(":=");
-        advanceToAChild(currentNode);
-        matchExp();
-
-        advanceToNextSameLevelNode(currentNode);
-    }
-
-    private void matchRepeatStmt() {
-        LOG("repeat-stmt is found", Level.INFO);
-
-        SyntaxTreeNode currentNode = tree;
-        currentNode.setLabel("repeat");
-
-        match("repeat");
-        advanceToAChild(currentNode);
-        matchStmtSequence(false);
-        match("until");
-        advanceToAChild(currentNode);
-        matchExp();
-
-        advanceToNextSameLevelNode(currentNode);
+    public SyntaxTreeNode parse(BufferedReader br) {
+        return parse(br, null);
     }
 
-    private void matchIfStmt() {
-        LOG("if-stmt is found", Level.INFO);
-
-        SyntaxTreeNode currentNode = tree;
-        currentNode.setLabel("if");
-
-        match("if");
-        advanceToAChild(currentNode);
-        matchExp();
-        match("then");
-        advanceToAChild(currentNode);
-        matchStmtSequence(false);
-
-        if (currentToken.getValue().equals("else")) {
-            match("else");
-            advanceToAChild(currentNode);
-            matchStmtSequence(false);
+    /*
+    * Parses a source file by scanning it straight out of memory-mapped
+    * chunks, the heap needed does not grow with the size of the file.
+    */
+    public SyntaxTreeNode parse(Path file) throws IOException {
+        try (Reader reader = new MappedFileReader(file)) {
+            return parse(reader, file.toString());
         }
-        match("end");
-
-        advanceToNextSameLevelNode(currentNode);
     }
 
-    private void matchExp() {
-        LOG("exp is found", Level.INFO);
-
-        SyntaxTreeNode currentNode = tree;
-        currentNode.markAsExpression();
-
-        matchSimpleExp();
-        String tk_val = currentToken.getValue();
-        if (tk_val.equals("<") || tk_val.equals("=")){
-            matchOp(currentNode);
-            advanceToAChild(tree);
-            matchSimpleExp();
-        }
+    /*
+    * Parses in recovering mode, every error of the program is reported
+    * instead of only the first one.
+    */
+    public ParseResult parseRecovering(BufferedReader br) {
+        return parseRecovering(br, null);
     }
 
-    private void matchSimpleExp() {
-        LOG("simple-exp is found", Level.INFO);
-
-        SyntaxTreeNode currentNode = tree;
-        currentNode.markAsExpression();
-
-        matchTerm();
-        while (currentToken.getValue().equals("+") ||
-                currentToken.getValue().equals("-")) {
-            matchOp(currentNode);
-            advanceToAChild(tree);
-            matchTerm();
+    public ParseResult parseRecovering(Path file) throws IOException {
+        try (Reader reader = new MappedFileReader(file)) {
+            return parseRecovering(reader, file.toString());
         }
     }
 
-    private void matchOp(SyntaxTreeNode sourceNode) {
-        String tk_val = currentToken.getValue();
-        switch (tk_val) {
-            case "<":
-            case "=":
-                LOG("comparison-op is found", Level.INFO);
-                break;
-            case "+":
-            case "-":
-                LOG("addop is found", Level.INFO);
-                break;
-            case "*":
-            case "/":
-                LOG("mulop is found", Level.INFO);
-                break;
+    private ParseResult parseRecovering(Reader reader, String source) {
+        ParseContext context = acquire();
+        long start = metrics == null ? 0 : System.nanoTime();
+        try {
+            ParseResult result = context.parseRecovering(reader);
+            if (metrics != null)
+                metrics.record(context.measure(source, System.nanoTime() - start,
+                        result.getDiagnostics().size()));
+            return result;
+        } catch (ParserError | SourceError | StackOverflowError e) {
+            if (metrics != null)
+                metrics.record(context.measure(source, System.nanoTime() - start, 1));
+            throw e;
+        } finally {
+            release(context);
         }
-
-        SyntaxTreeNode newNode = new SyntaxTreeNode("op");
-        SyntaxTreeNode sourceParent = sourceNode.getParent();
-
-        sourceParent.setChild(sourceParent.getChildNum(sourceNode), newNode);
-        newNode.setParent(sourceParent);
-        newNode.addChild(sourceNode);
-        sourceNode.setParent(newNode);
-
-        tree = newNode;
-        newNode.setValue(tk_val);
-        newNode.markAsExpression();
-
-        match(tk_val);
     }
 
-    private void matchTerm() {
-        LOG("term is found", Level.INFO);
-
-        SyntaxTreeNode currentNode = tree;
-        currentNode.markAsExpression();
-
-        matchFactor();
-        while(currentToken.getValue().equals("*") ||
-                currentToken.getValue().equals("/")) {
-            matchOp(currentNode);
-            advanceToAChild(tree);
-            matchFactor();
+    private SyntaxTreeNode parse(Reader reader, String source) {
+        ParseContext context = acquire();
+        long start = metrics == null ? 0 : System.nanoTime();
+        try {
+            SyntaxTreeNode tree = context.parse(reader);
+            if (metrics != null)
+                metrics.record(context.measure(source, System.nanoTime() - start, 0));
+            return tree;
+        } catch (ParserError | SourceError | StackOverflowError e) {
+            if (metrics != null)
+                metrics.record(context.measure(source, System.nanoTime() - start, 1));
+            throw e;
+        } finally {
+            release(context);
         }
     }
 
-    private void matchFactor() {
-        LOG("factor is found", Level.INFO);
-
-        tree.markAsExpression();
-
-        if (currentToken.getValue().equals("(")) {
-            match("(");
-            matchExp();
-            match(")");
-        } else if (currentToken.getType().equals("identifier")) {
-            tree.setLabel("id");
-            tree.setValue(currentToken.getValue());
-            match("identifier");
-        } else if (currentToken.getType().equals("number")) {
-            tree.setLabel("const");
-            tree.setValue(currentToken.getValue());
-            match("number");
-        } else {
-            LOG("Invalid token for factor: ["+currentToken.getValue()+"]", Level.SEVERE);
-        }
+    private static int firstSlot() {
+        return (int) Thread.currentThread().getId() & (POOL_SIZE - 1);
     }
 
-    private void match(String s) {
-        if (currentToken.getValue().equals(s) ||
-                currentToken.getType().equals(s)) {
-            try {
-                currentToken = scanner.getNextToken();
-            } catch (IOException e) {
-                e.printStackTrace();
-                throw new ParserError();
+    private ParseContext acquire() {
+        int first = firstSlot();
+        for (int i = 0; i < POOL_SIZE; i++) {
+            int slot = (first + i) & (POOL_SIZE - 1);
+            if (pool.get(slot) != null) {
+                ParseContext context = pool.getAndSet(slot, null);
+                if (context != null)
+                    return context;
             }
-        } else {
-            LOG("Unexpected token: [" +currentToken.getValue()+"], expected: ["+s+"]", Level.SEVERE);
         }
+        return new ParseContext(listener, metrics != null);
     }
 
-    private void advanceToNextSameLevelNode(SyntaxTreeNode sourceNode) {
-        sourceNode.setNextSameLevelNode(new SyntaxTreeNode("NIL"));
-        tree = sourceNode.getNextSameLevelNode();
-    }
+    private void release(ParseContext context) {
+        context.release();
 
-    private void advanceToAChild(SyntaxTreeNode sourceNode) {
-        sourceNode.addChild(new SyntaxTreeNode("NIL"));
-        tree = sourceNode.getLastChild();
+        int first = firstSlot();
+        for (int i = 0; i < POOL_SIZE; i++) {
+            int slot = (first + i) & (POOL_SIZE - 1);
+            if (pool.get(slot) == null && pool.compareAndSet(slot, null, context))
+                return;
+        }
     }
 }
@@ -0,0 +1,576 @@
+package muhzi.parser;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+public final class SyntaxTree {
+    /*
+    * Struct-of-arrays storage for a syntax tree. Node i is described by
+    * the i-th slot of every array: its kind, the index of its value in a
+    * lexeme pool shared by all nodes, its first child, its next sibling
+    * in the child list of its parent, the next statement of the same
+    * stmt-sequence and its parent. A missing link is NONE. Each node also
+    * records the span of source text it was parsed from, as an offset
+    * and a length, and the tree keeps the line starts of that text to
+    * turn offsets into lines and columns when asked.
+    *
+    * As with the linked nodes it replaces, the parent of a statement that
+    * follows another one in a stmt-sequence is that previous statement.
+    *
+    * SyntaxTreeNode is a lightweight view of one slot, nodes are only
+    * materialized as objects when they are asked for.
+    */
+
+    public static final int NONE = -1;
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private byte[] kind;
+    private int[] value;
+    private int[] firstChild;
+    private int[] nextSibling;
+    private int[] next;
+    private int[] parent;
+    private int[] offset;
+    private int[] length;
+    private int size;
+    private int root = NONE;
+
+    private String[] lexemes;
+    private int lexemeCount;
+    private final HashMap<String, Integer> lexemeIndex = new HashMap<>();
+
+    private LineMap lines = new LineMap();
+
+    // the offsets of nodes at or after gap, the end of the last edit, are
+    // stored less textLength, so an edit moves them all by changing it
+    private int gap = Integer.MAX_VALUE;
+    private int textLength;
+
+    // subtree sizes and stmt-sequence lengths counted so far, 0 where not
+    // counted yet, a sequence's length is kept at its first statement.
+    // Only reachable nodes are counted, and nodes dropped by truncate
+    // never were, so the indices they leave for reuse have no counts
+    private int[] subtreeSizes;
+    private int[] sequenceLengths;
+
+    SyntaxTree() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    SyntaxTree(int capacity) {
+        kind = new byte[capacity];
+        value = new int[capacity];
+        firstChild = new int[capacity];
+        nextSibling = new int[capacity];
+        next = new int[capacity];
+        parent = new int[capacity];
+        offset = new int[capacity];
+        length = new int[capacity];
+        lexemes = new String[16];
+    }
+
+    int addNode(NodeKind nodeKind) {
+        if (size == kind.length)
+            grow();
+
+        int node = size++;
+        kind[node] = (byte) nodeKind.ordinal();
+        value[node] = NONE;
+        firstChild[node] = NONE;
+        nextSibling[node] = NONE;
+        next[node] = NONE;
+        parent[node] = NONE;
+        offset[node] = 0;
+        length[node] = 0;
+        return node;
+    }
+
+    private void grow() {
+        int capacity = 2 * kind.length;
+        kind = Arrays.copyOf(kind, capacity);
+        value = Arrays.copyOf(value, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        nextSibling = Arrays.copyOf(nextSibling, capacity);
+        next = Arrays.copyOf(next, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        offset = Arrays.copyOf(offset, capacity);
+        length = Arrays.copyOf(length, capacity);
+    }
+
+    private int intern(String lexeme) {
+        Integer index = lexemeIndex.get(lexeme);
+        if (index != null)
+            return index;
+
+        if (lexemeCount == lexemes.length)
+            lexemes = Arrays.copyOf(lexemes, 2 * lexemes.length);
+        lexemes[lexemeCount] = lexeme;
+        lexemeIndex.put(lexeme, lexemeCount);
+        return lexemeCount++;
+    }
+
+    void setRoot(int node) {
+        root = node;
+    }
+
+    void setValue(int node, String lexeme) {
+        value[node] = lexeme == null ? NONE : intern(lexeme);
+    }
+
+    int addLexeme(String lexeme) {
+        return intern(lexeme);
+    }
+
+    int getLexemeCount() {
+        return lexemeCount;
+    }
+
+    String getLexeme(int index) {
+        return lexemes[index];
+    }
+
+    int getValueIndex(int node) {
+        return value[node];
+    }
+
+    void setValueIndex(int node, int index) {
+        value[node] = index;
+    }
+
+    void addChild(int node, int child) {
+        int last = getLastChild(node);
+        if (last == NONE) {
+            firstChild[node] = child;
+        } else {
+            nextSibling[last] = child;
+        }
+        nextSibling[child] = NONE;
+        parent[child] = node;
+    }
+
+    void setNext(int node, int nextNode) {
+        next[node] = nextNode;
+        if (nextNode != NONE)
+            parent[nextNode] = node;
+    }
+
+    void setSpan(int node, int start, int end) {
+        offset[node] = start;
+        length[node] = end - start;
+    }
+
+    void setLines(LineMap lineMap) {
+        lines = lineMap;
+    }
+
+    public LineMap getLines() {
+        return lines;
+    }
+
+    public int getOffset(int node) {
+        int stored = offset[node];
+        return stored >= 0 ? stored : stored + textLength;
+    }
+
+    public int getLength(int node) {
+        return length[node];
+    }
+
+    public int getLine(int node) {
+        return lines.getLine(getOffset(node));
+    }
+
+    public int getColumn(int node) {
+        return lines.getColumn(getOffset(node));
+    }
+
+    /*
+    * Drops every node added after the tree had the given size.
+    */
+    void truncate(int newSize) {
+        size = newSize;
+    }
+
+    /*
+    * Links the stmt-sequence starting at first in place of statement, in
+    * the child list or the statement chain the statement belonged to. The
+    * replaced nodes stay in the arrays but are no longer reachable.
+    *
+    * The counts kept for the stmt-sequence starting at head, which holds
+    * statement, and for the enclosing statements are updated by the
+    * difference, so they stay valid without counting the tree again.
+    */
+    synchronized void replaceStatement(int statement, int first, int head, int[] enclosing, int enclosingCount) {
+        int statements = 1;
+        int nodes = getSubtreeSize(first);
+        int last = first;
+        while (next[last] != NONE) {
+            last = next[last];
+            statements++;
+            nodes += getSubtreeSize(last);
+        }
+
+        if (subtreeSizes != null) {
+            prepareCounts();
+            int nodesDelta = nodes - getSubtreeSize(statement);
+            for (int i = 0; i < enclosingCount; i++) {
+                if (subtreeSizes[enclosing[i]] != 0)
+                    subtreeSizes[enclosing[i]] += nodesDelta;
+            }
+            if (sequenceLengths[head] != 0) {
+                int newHead = head == statement ? first : head;
+                sequenceLengths[newHead] = sequenceLengths[head] + statements - 1;
+            }
+        }
+
+        int owner = parent[statement];
+        if (owner == NONE) {
+            root = first;
+        } else if (next[owner] == statement) {
+            next[owner] = first;
+        } else if (firstChild[owner] == statement) {
+            firstChild[owner] = first;
+            nextSibling[first] = nextSibling[statement];
+        } else {
+            int child = firstChild[owner];
+            while (nextSibling[child] != statement) {
+                child = nextSibling[child];
+            }
+            nextSibling[child] = first;
+            nextSibling[first] = nextSibling[statement];
+        }
+        parent[first] = owner;
+        setNext(last, next[statement]);
+    }
+
+    void setTextLength(int length) {
+        textLength = length;
+    }
+
+    /*
+    * Prepares the spans for an edit of the text up to end, the top-level
+    * statement given being near the previous edit. Only the nodes between
+    * the two edits are visited, typing in one place costs the statements
+    * on the way to it and nothing per node of the tree. When the edits
+    * are far apart a pass over the arrays is faster.
+    */
+    void moveGap(int end, int statement) {
+        if (end == gap)
+            return;
+
+        int low = Math.min(gap, end);
+        int high = Math.max(gap, end);
+        boolean far = gap == Integer.MAX_VALUE || high - low > textLength / 16;
+        gap = end;
+        if (!far) {
+            moveGapAlong(low, high, statement);
+        } else if (end == low) {
+            for (int node = 0; node < size; node++) {
+                if (offset[node] >= end)
+                    offset[node] -= textLength;
+            }
+        } else {
+            for (int node = 0; node < size; node++) {
+                if (offset[node] < 0 && offset[node] + textLength < end)
+                    offset[node] += textLength;
+            }
+        }
+    }
+
+    private void moveGapAlong(int low, int high, int statement) {
+        while (statement != NONE && getOffset(statement) > low) {
+            statement = parent[statement];
+        }
+        if (statement == NONE)
+            statement = root;
+
+        int[] stack = new int[16];
+        for (; statement != NONE && getOffset(statement) < high; statement = next[statement]) {
+            // the statements of inner sequences are pushed along with the
+            // one they follow, the top-level ones are walked here
+            int top = 0;
+            stack[top++] = statement;
+            while (top > 0) {
+                int node = stack[--top];
+                int position = getOffset(node);
+                if (position >= high)
+                    continue;
+                if (node != statement && next[node] != NONE) {
+                    if (top == stack.length)
+                        stack = Arrays.copyOf(stack, 2 * stack.length);
+                    stack[top++] = next[node];
+                }
+                if (position + length[node] <= low)
+                    continue;
+
+                if (position >= low)
+                    offset[node] = position < gap ? position : position - textLength;
+                for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+                    if (top == stack.length)
+                        stack = Arrays.copyOf(stack, 2 * stack.length);
+                    stack[top++] = child;
+                }
+            }
+        }
+    }
+
+    /*
+    * Follows an edit of delta characters ending at the gap: the nodes
+    * after it move along with the end of the text and the enclosing
+    * statements grow or shrink.
+    */
+    void shiftSpans(int delta, int[] enclosing, int enclosingCount) {
+        textLength += delta;
+        gap += delta;
+        for (int i = 0; i < enclosingCount; i++) {
+            length[enclosing[i]] += delta;
+        }
+    }
+
+    /*
+    * Copies the tree into arrays of its own, for a tree that is about to
+    * be updated in place while the original is still shared.
+    */
+    SyntaxTree copy() {
+        SyntaxTree copy = new SyntaxTree(Math.max(size, 1));
+        System.arraycopy(kind, 0, copy.kind, 0, size);
+        System.arraycopy(value, 0, copy.value, 0, size);
+        System.arraycopy(firstChild, 0, copy.firstChild, 0, size);
+        System.arraycopy(nextSibling, 0, copy.nextSibling, 0, size);
+        System.arraycopy(next, 0, copy.next, 0, size);
+        System.arraycopy(parent, 0, copy.parent, 0, size);
+        System.arraycopy(offset, 0, copy.offset, 0, size);
+        System.arraycopy(length, 0, copy.length, 0, size);
+        copy.size = size;
+        copy.root = root;
+        copy.gap = gap;
+        copy.textLength = textLength;
+        copy.lines = lines.copy();
+        for (int i = 0; i < lexemeCount; i++) {
+            copy.intern(lexemes[i]);
+        }
+        return copy;
+    }
+
+    /*
+    * As getSubtreeSize, for a node reachable from the root, and the number
+    * of statements in the stmt-sequence starting at first. Counts are kept
+    * for the nodes counted to answer, including the ones inside, and kept
+    * up to date by edits, so a view asking again does not walk them again.
+    */
+    public synchronized int getCountedSubtreeSize(int node) {
+        prepareCounts();
+        if (subtreeSizes[node] != 0)
+            return subtreeSizes[node];
+
+        // entering a node pushes it back complemented, to sum it up after
+        // every statement under it is counted
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = node;
+        while (top > 0) {
+            int entry = stack[--top];
+            if (entry >= 0) {
+                stack[top++] = ~entry;
+                for (int child = firstChild[entry]; child != NONE; child = nextSibling[child]) {
+                    for (int statement = child; statement != NONE; statement = next[statement]) {
+                        if (subtreeSizes[statement] == 0) {
+                            if (top == stack.length)
+                                stack = Arrays.copyOf(stack, 2 * stack.length);
+                            stack[top++] = statement;
+                        }
+                    }
+                }
+            } else {
+                int counted = ~entry;
+                int own = 1;
+                for (int child = firstChild[counted]; child != NONE; child = nextSibling[child]) {
+                    for (int statement = child; statement != NONE; statement = next[statement]) {
+                        own += subtreeSizes[statement];
+                    }
+                }
+                subtreeSizes[counted] = own;
+            }
+        }
+        return subtreeSizes[node];
+    }
+
+    public synchronized int getSequenceLength(int first) {
+        prepareCounts();
+        if (sequenceLengths[first] == 0) {
+            int statements = 0;
+            for (int statement = first; statement != NONE; statement = next[statement]) {
+                statements++;
+            }
+            sequenceLengths[first] = statements;
+        }
+        return sequenceLengths[first];
+    }
+
+    private void prepareCounts() {
+        if (subtreeSizes == null) {
+            subtreeSizes = new int[kind.length];
+            sequenceLengths = new int[kind.length];
+        } else if (subtreeSizes.length < size) {
+            subtreeSizes = Arrays.copyOf(subtreeSizes, kind.length);
+            sequenceLengths = Arrays.copyOf(sequenceLengths, kind.length);
+        }
+    }
+
+    /*
+    * Counts the nodes of the subtree of node, the statements following it
+    * are not part of it.
+    */
+    public int getSubtreeSize(int node) {
+        int count = 0;
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = node;
+        while (top > 0) {
+            int current = stack[--top];
+            count++;
+
+            if (top + 4 > stack.length)
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+            if (current != node && next[current] != NONE)
+                stack[top++] = next[current];
+            for (int child = firstChild[current]; child != NONE; child = nextSibling[child]) {
+                stack[top++] = child;
+            }
+        }
+        return count;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getRoot() {
+        return root;
+    }
+
+    public SyntaxTreeNode getRootNode() {
+        return node(root);
+    }
+
+    public SyntaxTreeNode node(int node) {
+        return node == NONE ? null : new SyntaxTreeNode(this, node);
+    }
+
+    public NodeKind getKind(int node) {
+        return NodeKind.of(kind[node]);
+    }
+
+    public String getValue(int node) {
+        return value[node] == NONE ? null : lexemes[value[node]];
+    }
+
+    public int getFirstChild(int node) {
+        return firstChild[node];
+    }
+
+    public int getNextSibling(int node) {
+        return nextSibling[node];
+    }
+
+    public int getNext(int node) {
+        return next[node];
+    }
+
+    public int getParent(int node) {
+        return parent[node];
+    }
+
+    public int getNumOfChildren(int node) {
+        int count = 0;
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+            count++;
+        }
+        return count;
+    }
+
+    public int getChild(int node, int childNum) {
+        int child = firstChild[node];
+        for (int i = 0; i < childNum && child != NONE; i++) {
+            child = nextSibling[child];
+        }
+        return child;
+    }
+
+    int getLastChild(int node) {
+        int child = firstChild[node];
+        if (child == NONE)
+            return NONE;
+        while (nextSibling[child] != NONE) {
+            child = nextSibling[child];
+        }
+        return child;
+    }
+
+    /*
+    * The level width of a node is the number of leaves reachable from it
+    * through child and next-statement links, that is the number of
+    * columns its subtree and the statements after it take when drawn.
+    */
+    public int getLevelWidth(int node) {
+        if (node == NONE)
+            return 0;
+
+        int width = 0;
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = node;
+        while (top > 0) {
+            int current = stack[--top];
+            if (firstChild[current] == NONE)
+                width++;
+
+            if (top + 4 > stack.length)
+                stack = Arrays.copyOf(stack, 2 * stack.length);
+            if (next[current] != NONE)
+                stack[top++] = next[current];
+            for (int child = firstChild[current]; child != NONE; child = nextSibling[child]) {
+                stack[top++] = child;
+            }
+        }
+        return width;
+    }
+
+    /*
+    * Computes the level width of every node of the tree in a single
+    * post-order pass, a node is finished only after its children and the
+    * statement that follows it.
+    */
+    public int[] getLevelWidths() {
+        int[] width = new int[size];
+        if (root == NONE)
+            return width;
+
+        // entering a node pushes it back complemented, to finish it later
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int entry = stack[--top];
+            if (entry >= 0) {
+                if (top + 5 > stack.length)
+                    stack = Arrays.copyOf(stack, 2 * stack.length);
+                stack[top++] = ~entry;
+                if (next[entry] != NONE)
+                    stack[top++] = next[entry];
+                for (int child = firstChild[entry]; child != NONE; child = nextSibling[child]) {
+                    stack[top++] = child;
+                }
+            } else {
+                int node = ~entry;
+                int own = firstChild[node] == NONE ? 1 : 0;
+                for (int child = firstChild[node]; child != NONE; child = nextSibling[child]) {
+                    own += width[child];
+                }
+                width[node] = own + (next[node] == NONE ? 0 : width[next[node]]);
+            }
+        }
+        return width;
+    }
+}
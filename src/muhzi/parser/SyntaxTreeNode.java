@@ -1,140 +1,97 @@
 package muhzi.parser;
 
 public class SyntaxTreeNode {
+    /*
+    * A view of one node of a SyntaxTree. Views are created on demand and
+    * hold no state of their own, two views of the same node are equal.
+    */
 
-    private SyntaxTreeNode next;
-    private int numOfChildren;
-    private SyntaxTreeNode[] children;
+    private final SyntaxTree tree;
+    private final int index;
 
-    private SyntaxTreeNode parent;
+    SyntaxTreeNode(SyntaxTree tree, int index) {
+        this.tree = tree;
+        this.index = index;
+    }
 
-    private String label;
-    private boolean expression;
-    private String value;
+    public SyntaxTree getTree() {
+        return tree;
+    }
 
-    SyntaxTreeNode(String label) {
-        this.label = label;
-        next = null;
-        children = new SyntaxTreeNode[3];
-        parent = null;
-        expression = false;
-        value = null;
-        numOfChildren = 0;
+    public int getIndex() {
+        return index;
     }
 
     public boolean isExpression() {
-        return expression;
+        return tree.getKind(index).isExpression();
     }
 
-    SyntaxTreeNode getParent() {
-        return parent;
+    public NodeKind getKind() {
+        return tree.getKind(index);
     }
 
     public SyntaxTreeNode[] getChildren() {
+        SyntaxTreeNode[] children = new SyntaxTreeNode[tree.getNumOfChildren(index)];
+        int child = tree.getFirstChild(index);
+        for (int i = 0; i < children.length; i++) {
+            children[i] = new SyntaxTreeNode(tree, child);
+            child = tree.getNextSibling(child);
+        }
         return children;
     }
 
     public SyntaxTreeNode getNextSameLevelNode() {
-        return next;
+        return tree.node(tree.getNext(index));
     }
 
     public int getNumOfChildren() {
-        return numOfChildren;
-    }
-
-    SyntaxTreeNode getLastChild() {
-        if (numOfChildren > 0)
-            return children[numOfChildren-1];
-        return null;
-    }
-
-    int getChildNum(SyntaxTreeNode child) {
-        for (int i = 0; i < children.length; i++) {
-            if (children[i] == child)
-                return i;
-        }
-        return -1;
+        return tree.getNumOfChildren(index);
     }
 
     public String getLabel() {
-        return label;
+        return tree.getKind(index).getLabel();
     }
 
     public String getValue() {
-        return value;
-    }
-
-    void addChild(SyntaxTreeNode child) {
-        if (!(numOfChildren == children.length)) {
-            children[numOfChildren] = child;
-            children[numOfChildren].parent = this;
-            numOfChildren++;
-        }
+        return tree.getValue(index);
     }
 
-    void setLabel(String label) {
-        this.label = label;
+    /*
+    * Span of the source text the node was parsed from, a statement spans
+    * its children and an operator both of its operands.
+    */
+    public int getOffset() {
+        return tree.getOffset(index);
     }
 
-    void setValue(String value) {
-        this.value = value;
+    public int getLength() {
+        return tree.getLength(index);
     }
 
-    void setParent(SyntaxTreeNode parent) {
-        this.parent = parent;
+    public int getLine() {
+        return tree.getLine(index);
     }
 
-    void markAsExpression() {
-        expression = true;
+    public int getColumn() {
+        return tree.getColumn(index);
     }
 
-    void setNextSameLevelNode(SyntaxTreeNode next) {
-        this.next = next;
-        this.next.parent = this;
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof SyntaxTreeNode))
+            return false;
+        SyntaxTreeNode other = (SyntaxTreeNode) o;
+        return tree == other.tree && index == other.index;
     }
 
-    void setChild(int childNum, SyntaxTreeNode child){
-        children[childNum] = child;
-    }
-
-    static void removeNilNodes(SyntaxTreeNode root) {
-        if (root == null)
-            return;
-
-        if (root.getLabel().equals("NIL")) {
-            int childNum = root.parent.getChildNum(root);
-
-            if (childNum == -1) {
-                root.parent.next = null;
-            } else {
-                root.parent.setChild(root.parent.getChildNum(root), null);
-            }
-        }
-
-        for (SyntaxTreeNode child: root.children) {
-            removeNilNodes(child);
-        }
-        removeNilNodes(root.next);
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(tree) + index;
     }
 
     public static int getLevelWidth(SyntaxTreeNode root) {
         if (root == null)
             return 0;
-
-        int width = 0;
-        int numOfChildren = root.numOfChildren;
-
-        if (numOfChildren == 0) {
-            if (root.next == null) {
-                return 1;
-            } else {
-                width = 1;
-            }
-        }
-
-        for (int i = 0; i < numOfChildren; i++) {
-            width += getLevelWidth(root.children[i]);
-        }
-        return width + getLevelWidth(root.next);
+        return root.tree.getLevelWidth(root.index);
     }
 }
@@ -0,0 +1,172 @@
+package muhzi.parser;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static muhzi.parser.SyntaxTreeWriter.MAGIC;
+import static muhzi.parser.SyntaxTreeWriter.VERSION;
+
+public final class SyntaxTreeReader {
+    /*
+    * Loads a tree written by SyntaxTreeWriter. A file is memory-mapped
+    * and the nodes are decoded straight out of the mapping into the
+    * arrays of the tree, which are sized once from the node count at the
+    * end of the file. No bytes are read into intermediate buffers except
+    * the lexemes, which become Strings anyway.
+    *
+    * A file that does not describe a well-formed tree fails with an
+    * IOException instead of producing a broken one.
+    */
+
+    private static final int KIND_COUNT = NodeKind.values().length;
+
+    private SyntaxTreeReader() {
+    }
+
+    /*
+    * Returns the root of the tree, null for an empty program.
+    */
+    public static SyntaxTreeNode read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("Syntax tree file too large: " + file);
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, size)).getRootNode();
+        }
+    }
+
+    /*
+    * Decodes the tree held in the remaining bytes of the buffer.
+    */
+    static SyntaxTree read(ByteBuffer buffer) throws IOException {
+        try {
+            return decode(buffer);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw corrupt();
+        }
+    }
+
+    private static SyntaxTree decode(ByteBuffer buffer) throws IOException {
+        int end = buffer.limit() - 4;
+        if (end < buffer.position())
+            throw corrupt();
+        int count = buffer.getInt(end);
+        ByteBuffer in = buffer.duplicate();
+        in.limit(end);
+
+        if (in.getInt() != MAGIC || readVarint(in) != VERSION)
+            throw new IOException("Not a syntax tree file");
+        // every node takes five bytes at least
+        if (count < 0 || count > in.remaining() / 5)
+            throw corrupt();
+
+        SyntaxTree tree = new SyntaxTree(Math.max(count, 1));
+        int lexemeCount = readVarint(in);
+        if (lexemeCount > in.remaining())
+            throw corrupt();
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < lexemeCount; i++) {
+            int length = readVarint(in);
+            if (length > in.remaining())
+                throw corrupt();
+            if (length > bytes.length)
+                bytes = new byte[Math.max(length, 2 * bytes.length)];
+            in.get(bytes, 0, length);
+            if (tree.addLexeme(new String(bytes, 0, length, StandardCharsets.UTF_8)) != i)
+                throw corrupt();
+        }
+
+        int lineCount = readVarint(in);
+        if (lineCount > in.remaining())
+            throw corrupt();
+        LineMap lines = new LineMap();
+        int lineStart = 0;
+        for (int line = 1; line <= lineCount; line++) {
+            int delta = readVarint(in);
+            if (delta < 0 || (line > 1 && delta == 0))
+                throw corrupt();
+            lineStart += delta;
+            if (line == 1) {
+                lines.reset(lineStart);
+            } else {
+                lines.addLineStart(lineStart);
+            }
+        }
+        tree.setLines(lines);
+
+        // nodes still to come are awaited by slots, the node they attach
+        // to shifted left and a low bit set for a next statement
+        int[] slots = new int[16];
+        int top = 0;
+        int previousOffset = 0;
+        for (int node = 0; node < count; node++) {
+            int slot = 0;
+            if (node > 0) {
+                if (top == 0)
+                    throw corrupt();
+                slot = slots[--top];
+            }
+
+            int header = readVarint(in);
+            int kind = header >>> 1;
+            if (kind >= KIND_COUNT)
+                throw corrupt();
+            tree.addNode(NodeKind.of(kind));
+
+            int value = readVarint(in);
+            if (value > lexemeCount)
+                throw corrupt();
+            tree.setValueIndex(node, value - 1);
+
+            int childCount = readVarint(in);
+            int delta = readVarint(in);
+            int offset = previousOffset + (delta >>> 1 ^ -(delta & 1));
+            tree.setSpan(node, offset, offset + readVarint(in));
+            previousOffset = offset;
+
+            if (node == 0) {
+                tree.setRoot(node);
+            } else if ((slot & 1) != 0) {
+                tree.setNext(slot >>> 1, node);
+            } else {
+                tree.addChild(slot >>> 1, node);
+            }
+
+            int pending = top + childCount + (header & 1);
+            if (childCount < 0 || pending > count - node - 1)
+                throw corrupt();
+            if (pending > slots.length)
+                slots = Arrays.copyOf(slots, Math.max(2 * slots.length, pending));
+            if ((header & 1) != 0)
+                slots[top++] = node << 1 | 1;
+            for (int i = 0; i < childCount; i++) {
+                slots[top++] = node << 1;
+            }
+        }
+
+        if (top != 0 || in.hasRemaining())
+            throw corrupt();
+        return tree;
+    }
+
+    private static int readVarint(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw corrupt();
+    }
+
+    private static IOException corrupt() {
+        return new IOException("Corrupt syntax tree file");
+    }
+}
@@ -0,0 +1,165 @@
+package muhzi.parser;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class SyntaxTreeWriter {
+    /*
+    * Writes a syntax tree in a compact binary form that SyntaxTreeReader
+    * loads back without parsing:
+    *
+    *   magic "TAST", version
+    *   lexeme count, then each lexeme as its UTF-8 length and bytes
+    *   line count, then the start of each line minus that of the previous
+    *   the nodes in pre-order, a node followed by the subtrees of its
+    *   children and then by the statement after it, each node being
+    *     kind << 1 | 1 when a statement follows it
+    *     lexeme index + 1, 0 for a node without a value
+    *     number of children
+    *     offset minus the offset of the previous node, zigzag encoded
+    *     length
+    *   node count as a fixed 4-byte big-endian int
+    *
+    * Every number but the last is an unsigned LEB128 varint, most nodes
+    * take five or six bytes. Nodes are written as they are visited
+    * through a small buffer, the tree is never copied in full, and nodes
+    * no longer reachable from the root are left out.
+    */
+
+    static final int MAGIC = 0x54415354;
+    static final int VERSION = 3;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+
+    public SyntaxTreeWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    public static void write(SyntaxTreeNode root, Path file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            new SyntaxTreeWriter(out).write(root);
+        }
+    }
+
+    /*
+    * Writes the tree starting at root, a null root for an empty program,
+    * and flushes it to the stream, which is left open.
+    */
+    public void write(SyntaxTreeNode root) throws IOException {
+        writeFixedInt(MAGIC);
+        writeVarint(VERSION);
+
+        if (root == null) {
+            writeVarint(0);
+            writeVarint(0);
+            writeFixedInt(0);
+            flush();
+            return;
+        }
+
+        SyntaxTree tree = root.getTree();
+        int lexemeCount = tree.getLexemeCount();
+        writeVarint(lexemeCount);
+        for (int i = 0; i < lexemeCount; i++) {
+            byte[] bytes = tree.getLexeme(i).getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            writeBytes(bytes);
+        }
+
+        LineMap lines = tree.getLines();
+        writeVarint(lines.getLineCount());
+        int previousStart = 0;
+        for (int line = 1; line <= lines.getLineCount(); line++) {
+            writeVarint(lines.getLineStart(line) - previousStart);
+            previousStart = lines.getLineStart(line);
+        }
+
+        int count = 0;
+        int previousOffset = 0;
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = root.getIndex();
+        while (top > 0) {
+            int node = stack[--top];
+            int next = tree.getNext(node);
+            int childCount = 0;
+            for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+                childCount++;
+            }
+
+            writeVarint(tree.getKind(node).ordinal() << 1 | (next == SyntaxTree.NONE ? 0 : 1));
+            writeVarint(tree.getValueIndex(node) + 1);
+            writeVarint(childCount);
+            int offset = tree.getOffset(node);
+            int delta = offset - previousOffset;
+            writeVarint(delta << 1 ^ delta >> 31);
+            writeVarint(tree.getLength(node));
+            previousOffset = offset;
+            count++;
+
+            // the next statement goes below the children, it is written after them
+            if (top + childCount + 1 > stack.length)
+                stack = Arrays.copyOf(stack, Math.max(2 * stack.length, top + childCount + 1));
+            if (next != SyntaxTree.NONE)
+                stack[top++] = next;
+            top += childCount;
+            int slot = top;
+            for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+                stack[--slot] = child;
+            }
+        }
+
+        writeFixedInt(count);
+        flush();
+    }
+
+    private void writeVarint(int value) throws IOException {
+        if (position + 5 > buffer.length)
+            drain();
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeFixedInt(int value) throws IOException {
+        if (position + 4 > buffer.length)
+            drain();
+        buffer[position++] = (byte) (value >>> 24);
+        buffer[position++] = (byte) (value >>> 16);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        if (position + bytes.length > buffer.length) {
+            drain();
+            if (bytes.length > buffer.length) {
+                out.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void drain() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    private void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+}
@@ -1,27 +1,44 @@
 package muhzi.parser;
 
-class Token {
-    private String value;
-    private String type;
+public final class Token {
+    private final TokenKind kind;
+    private final String value;
+    private final int offset;
+    private final int length;
 
-    Token() {
-        value = "";
-        type = "";
+    Token(TokenKind kind, String value, int offset, int length) {
+        this.kind = kind;
+        this.value = value;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public TokenKind getKind() {
+        return kind;
     }
 
-    String getValue() {
+    public String getValue() {
         return value;
     }
 
-    String getType() {
-        return type;
+    public int getOffset() {
+        return offset;
     }
 
-    void setValue(String value) {
-        this.value = value;
+    public int getLength() {
+        return length;
+    }
+
+    public int getEnd() {
+        return offset + length;
+    }
+
+    public String getType() {
+        return kind.getDescription();
     }
 
-    void setType(String type) {
-        this.type = type;
+    @Override
+    public String toString() {
+        return kind + "(" + value + ")@" + offset;
     }
 }
@@ -0,0 +1,49 @@
+package muhzi.parser;
+
+public enum TokenKind {
+    IF("if", "Reserved keyword"),
+    THEN("then", "Reserved keyword"),
+    ELSE("else", "Reserved keyword"),
+    END("end", "Reserved keyword"),
+    REPEAT("repeat", "Reserved keyword"),
+    UNTIL("until", "Reserved keyword"),
+    READ("read", "Reserved keyword"),
+    WRITE("write", "Reserved keyword"),
+    IDENTIFIER("identifier", "identifier"),
+    NUMBER("number", "number"),
+    ASSIGN(":=", "Assignment operator"),
+    PLUS("+", "Addition operator"),
+    MINUS("-", "Subtraction operator"),
+    TIMES("*", "Multiplication operator"),
+    OVER("/", "Division operator"),
+    EQUAL("=", "Equality operator"),
+    LESS_THAN("<", "Comparison operator"),
+    LEFT_PAREN("(", "Left bracket"),
+    RIGHT_PAREN(")", "Right bracket"),
+    SEMICOLON(";", "Semicolon"),
+    EOF("", "");
+
+    private final String text;
+    private final String description;
+
+    TokenKind(String text, String description) {
+        this.text = text;
+        this.description = description;
+    }
+
+    /*
+    * The lexeme of keywords and symbols, or the name of the token class
+    * for identifiers and numbers.
+    */
+    public String getText() {
+        return text;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    boolean hasFixedText() {
+        return this != IDENTIFIER && this != NUMBER;
+    }
+}
@@ -0,0 +1,239 @@
+package muhzi.parser;
+
+import muhzi.parser.errors.TokenError;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public final class TokenStream implements Iterator<Token>, Closeable {
+    /*
+    * Tokens of a text, scanned in blocks into a ring buffer. The buffer
+    * holds the kind, value and span of each token in parallel arrays,
+    * the parser reads the current token and the ones after it in place
+    * and no Token object is created unless the stream is iterated.
+    *
+    * A block stops at a bad character. Its TokenError is only raised
+    * once every token before it has been consumed and the next one is
+    * needed, so errors come out in the same order as when scanning one
+    * token at a time. It is thrown, or handed to the error handler which
+    * lets scanning go on after the bad character.
+    *
+    * As an Iterator or a Stream the tokens come out one by one up to EOF,
+    * which is not included, so a file of any size can be tokenized lazily
+    * without building a tree.
+    */
+
+    private static final int BLOCK = 64;
+
+    private final Lexer lexer = new Lexer();
+    private final int lookahead;
+
+    private final TokenKind[] kinds;
+    private final String[] values;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final int mask;
+
+    // absolute token numbers, the slot of token i is i & mask
+    private long head;
+    private long tail;
+    private boolean atEnd;
+    private TokenError pendingError;
+    private Consumer<TokenError> errorHandler;
+    private Reader reader;
+
+    public TokenStream(Reader reader) {
+        this(reader, 1);
+    }
+
+    public TokenStream(Reader reader, int lookahead) {
+        this(lookahead);
+        reset(reader, 0);
+    }
+
+    TokenStream(int lookahead) {
+        if (lookahead < 1)
+            throw new IllegalArgumentException("Invalid lookahead: " + lookahead);
+
+        this.lookahead = lookahead;
+        int capacity = Integer.highestOneBit(lookahead + BLOCK - 1) << 1;
+        kinds = new TokenKind[capacity];
+        values = new String[capacity];
+        offsets = new int[capacity];
+        lengths = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    public static TokenStream open(Path file) throws IOException {
+        return new TokenStream(new MappedFileReader(file));
+    }
+
+    /*
+    * Starts over on reader, offsets start at baseOffset. The first token
+    * is not scanned before it is asked for.
+    */
+    void reset(Reader reader, int baseOffset) {
+        this.reader = reader;
+        lexer.reset(reader, baseOffset);
+        head = tail = 0;
+        atEnd = false;
+        pendingError = null;
+        if (reader == null)
+            Arrays.fill(values, null);
+    }
+
+    /*
+    * With a handler, bad characters are reported to it and skipped
+    * instead of thrown.
+    */
+    void setErrorHandler(Consumer<TokenError> handler) {
+        errorHandler = handler;
+    }
+
+    LineMap lines() {
+        return lexer.lines();
+    }
+
+    LineMap takeLines() {
+        return lexer.takeLines();
+    }
+
+    /*
+    * Makes sure the current token and the given number of tokens after it
+    * are buffered, past EOF every token is EOF.
+    */
+    void ensure(int ahead) throws IOException {
+        while (tail - head <= ahead && !atEnd) {
+            fill();
+        }
+    }
+
+    private void fill() throws IOException {
+        if (pendingError != null) {
+            TokenError error = pendingError;
+            pendingError = null;
+            if (errorHandler == null)
+                throw error;
+            errorHandler.accept(error);
+        }
+
+        long limit = head + kinds.length;
+        for (int n = 0; n < BLOCK && tail < limit; n++) {
+            TokenKind kind;
+            try {
+                kind = lexer.next();
+            } catch (TokenError e) {
+                pendingError = e;
+                return;
+            }
+
+            int slot = (int) tail & mask;
+            kinds[slot] = kind;
+            values[slot] = kind.hasFixedText() ? kind.getText() : lexer.lexeme();
+            offsets[slot] = lexer.tokenStart();
+            lengths[slot] = lexer.tokenLength();
+            tail++;
+            if (kind == TokenKind.EOF) {
+                atEnd = true;
+                return;
+            }
+        }
+    }
+
+    /*
+    * The current token, scanned by a previous ensure or advance.
+    */
+    TokenKind kind() {
+        return kinds[(int) head & mask];
+    }
+
+    String value() {
+        return values[(int) head & mask];
+    }
+
+    int offset() {
+        return offsets[(int) head & mask];
+    }
+
+    int end() {
+        int slot = (int) head & mask;
+        return offsets[slot] + lengths[slot];
+    }
+
+    /*
+    * Kind of the token ahead tokens after the current one, which must be
+    * within the lookahead of the stream.
+    */
+    TokenKind peek(int ahead) throws IOException {
+        if (ahead > lookahead)
+            throw new IllegalArgumentException("Lookahead " + ahead + " beyond " + lookahead);
+        ensure(ahead);
+        long index = Math.min(head + ahead, tail - 1);
+        return kinds[(int) index & mask];
+    }
+
+    /*
+    * Moves to the next token, EOF stays current once reached.
+    */
+    void advance() throws IOException {
+        if (head + 1 < tail) {
+            head++;
+        } else if (kinds[(int) head & mask] != TokenKind.EOF) {
+            head++;
+            ensure(0);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            ensure(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return kind() != TokenKind.EOF;
+    }
+
+    @Override
+    public Token next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        int slot = (int) head & mask;
+        Token token = new Token(kinds[slot], values[slot], offsets[slot], lengths[slot]);
+        head++;
+        return token;
+    }
+
+    public Spliterator<Token> spliterator() {
+        return Spliterators.spliteratorUnknownSize(this,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+    }
+
+    public Stream<Token> stream() {
+        return StreamSupport.stream(spliterator(), false).onClose(() -> {
+            try {
+                close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null)
+            reader.close();
+    }
+}
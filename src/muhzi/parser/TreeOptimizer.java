@@ -0,0 +1,396 @@
+package muhzi.parser;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+public final class TreeOptimizer {
+    /*
+    * Builds a smaller tree computing the same thing as a parsed one, the
+    * original is left untouched so shared and cached trees can be given.
+    *
+    * Each expression is first analyzed bottom-up without building
+    * anything: an operator whose operands are constants becomes one, an
+    * operator with a neutral operand, x + 0, 0 + x, x - 0, x * 1, 1 * x
+    * and x / 1, stands for its other operand, and x * 0 becomes 0 when
+    * x cannot fail. Arithmetic wraps around as it does when the program
+    * runs and a division by a constant 0 is kept, it fails at run time.
+    * Only then is the expression copied into the new tree, so nothing is
+    * built that is dropped afterwards.
+    *
+    * An if statement whose condition is constant is replaced by the
+    * statements of the branch that runs, or left out when no branch
+    * does. A stmt-sequence inside a statement cannot be empty, when all
+    * of its statements would go the first dead if is kept as it is.
+    *
+    * Operator expressions that appear more than once in a statement are
+    * found by numbering the values of its expressions after folding. A
+    * leaf is numbered by its lexeme, two expressions of the same operator
+    * on operands of the same numbers get the same number.
+    */
+
+    private static final String OPERATORS = "+-*/<=";
+
+    private final SyntaxTree tree;
+    private final SyntaxTree optimized = new SyntaxTree();
+
+    // by node of the original tree: the node whose value stands for it,
+    // itself unless an identity forwards it to an operand
+    private final int[] target;
+    private final boolean[] constant;
+    private final int[] value;
+    private final boolean[] mayFail;
+    private final boolean[] analyzed;
+
+    // value numbers of the expressions of the statement being analyzed,
+    // numbers below the lexeme count are those of leaves
+    private final int[] number;
+    private final int[] parent;
+    private HashMap<Long, Integer> numbers = new HashMap<>();
+    private int[] operators = new int[16];
+    private int operatorCount;
+    private int nextNumber;
+
+    private int lastStatement;
+    private int foldedConstants;
+    private int simplifiedIdentities;
+    private int deadBranches;
+    private int commonSubexpressions;
+
+    private TreeOptimizer(SyntaxTree tree) {
+        this.tree = tree;
+        int size = tree.size();
+        target = new int[size];
+        constant = new boolean[size];
+        value = new int[size];
+        mayFail = new boolean[size];
+        analyzed = new boolean[size];
+        number = new int[size];
+        parent = new int[size];
+        Arrays.fill(parent, SyntaxTree.NONE);
+    }
+
+    /*
+    * Optimizes the program whose first statement is root, which must have
+    * parsed without errors. A null root is an empty program.
+    */
+    public static OptimizationResult optimize(SyntaxTreeNode root) {
+        if (root == null)
+            return new OptimizationResult(null, 0, 0, 0, 0, 0, 0);
+        return new TreeOptimizer(root.getTree()).optimize(root.getIndex());
+    }
+
+    private OptimizationResult optimize(int root) {
+        int nodesBefore = 0;
+        for (int statement = root; statement != SyntaxTree.NONE; statement = tree.getNext(statement)) {
+            nodesBefore += tree.getSubtreeSize(statement);
+        }
+
+        optimized.setLines(tree.getLines().copy());
+        optimized.setRoot(copySequence(root, false));
+        return new OptimizationResult(optimized.getRootNode(), nodesBefore, optimized.size(),
+                foldedConstants, simplifiedIdentities, deadBranches, commonSubexpressions);
+    }
+
+    /*
+    * Copies a stmt-sequence without its dead if statements and returns its
+    * first statement, NONE when none is left, which a nested sequence
+    * never is. lastStatement is set to its last one.
+    */
+    private int copySequence(int first, boolean nested) {
+        int firstDead = SyntaxTree.NONE;
+        int firstDeadCount = 0;
+        int head = SyntaxTree.NONE;
+        int tail = SyntaxTree.NONE;
+
+        for (int statement = first; statement != SyntaxTree.NONE; statement = tree.getNext(statement)) {
+            int copyFirst;
+            int copyLast = SyntaxTree.NONE;
+            if (isDeadIf(statement)) {
+                int deadBefore = deadBranches;
+                deadBranches++;
+                int condition = tree.getFirstChild(statement);
+                int then = tree.getNextSibling(condition);
+                int branch = value[target[condition]] != 0 ? then : tree.getNextSibling(then);
+                copyFirst = branch == SyntaxTree.NONE ? SyntaxTree.NONE : copySequence(branch, false);
+                if (copyFirst != SyntaxTree.NONE)
+                    copyLast = lastStatement;
+                if (firstDead == SyntaxTree.NONE) {
+                    firstDead = statement;
+                    firstDeadCount = deadBranches - deadBefore;
+                }
+                if (copyFirst == SyntaxTree.NONE)
+                    continue;
+            } else {
+                copyFirst = copyLast = copyStatement(statement);
+            }
+
+            if (head == SyntaxTree.NONE) {
+                head = copyFirst;
+            } else {
+                optimized.setNext(tail, copyFirst);
+            }
+            tail = copyLast;
+        }
+
+        if (head == SyntaxTree.NONE && nested) {
+            // the first dead if is kept after all, only what was counted
+            // for removing it is taken back
+            deadBranches -= firstDeadCount;
+            head = tail = copyStatement(firstDead);
+        }
+        lastStatement = tail;
+        return head;
+    }
+
+    private boolean isDeadIf(int statement) {
+        if (tree.getKind(statement) != NodeKind.IF)
+            return false;
+        analyzeStatement(statement);
+        return constant[target[tree.getFirstChild(statement)]];
+    }
+
+    private int copyStatement(int statement) {
+        analyzeStatement(statement);
+        NodeKind kind = tree.getKind(statement);
+        int node = optimized.addNode(kind);
+        optimized.setValue(node, tree.getValue(statement));
+        optimized.setSpan(node, tree.getOffset(statement), tree.getOffset(statement) + tree.getLength(statement));
+
+        int first = tree.getFirstChild(statement);
+        switch (kind) {
+            case ASSIGN:
+            case WRITE:
+                optimized.addChild(node, copyExpression(first));
+                break;
+            case IF:
+                optimized.addChild(node, copyExpression(first));
+                int then = tree.getNextSibling(first);
+                optimized.addChild(node, copySequence(then, true));
+                if (tree.getNextSibling(then) != SyntaxTree.NONE)
+                    optimized.addChild(node, copySequence(tree.getNextSibling(then), true));
+                break;
+            case REPEAT:
+                optimized.addChild(node, copySequence(first, true));
+                optimized.addChild(node, copyExpression(tree.getNextSibling(first)));
+                break;
+        }
+        return node;
+    }
+
+    /*
+    * Copies what an analyzed expression comes down to. Chains of left
+    * operands are followed without recursion.
+    */
+    private int copyExpression(int node) {
+        int[] spine = new int[8];
+        int depth = 0;
+        node = target[node];
+        while (!constant[node] && tree.getKind(node) == NodeKind.OP) {
+            if (depth == spine.length)
+                spine = Arrays.copyOf(spine, 2 * depth);
+            spine[depth++] = node;
+            node = target[tree.getFirstChild(node)];
+        }
+
+        int copy = copyOperand(node);
+        while (depth > 0) {
+            int op = spine[--depth];
+            int right = copyExpression(tree.getNextSibling(tree.getFirstChild(op)));
+            int operator = optimized.addNode(NodeKind.OP);
+            optimized.setValue(operator, tree.getValue(op));
+            optimized.setSpan(operator, tree.getOffset(op), tree.getOffset(op) + tree.getLength(op));
+            optimized.addChild(operator, copy);
+            optimized.addChild(operator, right);
+            copy = operator;
+        }
+        return copy;
+    }
+
+    private int copyOperand(int node) {
+        int copy;
+        if (constant[node]) {
+            copy = optimized.addNode(NodeKind.CONST);
+            optimized.setValue(copy, tree.getKind(node) == NodeKind.CONST
+                    ? tree.getValue(node) : Integer.toString(value[node]));
+        } else {
+            copy = optimized.addNode(tree.getKind(node));
+            optimized.setValue(copy, tree.getValue(node));
+        }
+        optimized.setSpan(copy, tree.getOffset(node), tree.getOffset(node) + tree.getLength(node));
+        return copy;
+    }
+
+    private void analyzeStatement(int statement) {
+        if (analyzed[statement])
+            return;
+        analyzed[statement] = true;
+
+        // a large table costs its capacity to clear, every time
+        if (numbers.size() > 256) {
+            numbers = new HashMap<>();
+        } else {
+            numbers.clear();
+        }
+        operatorCount = 0;
+        nextNumber = tree.getLexemeCount();
+
+        int first = tree.getFirstChild(statement);
+        switch (tree.getKind(statement)) {
+            case ASSIGN:
+            case WRITE:
+            case IF:
+                analyzeExpression(first);
+                break;
+            case REPEAT:
+                analyzeExpression(tree.getNextSibling(first));
+                break;
+        }
+        countCommonSubexpressions();
+    }
+
+    /*
+    * Visits the operands of an expression before the expression, with an
+    * explicit stack, a node pushed twice once its operands are done.
+    */
+    private void analyzeExpression(int expression) {
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = expression << 1;
+        while (top > 0) {
+            int entry = stack[--top];
+            int node = entry >>> 1;
+            if (tree.getKind(node) != NodeKind.OP) {
+                analyzeOperand(node);
+            } else if ((entry & 1) != 0) {
+                analyzeOperator(node);
+            } else {
+                if (top + 3 > stack.length)
+                    stack = Arrays.copyOf(stack, 2 * stack.length);
+                int left = tree.getFirstChild(node);
+                stack[top++] = node << 1 | 1;
+                stack[top++] = tree.getNextSibling(left) << 1;
+                stack[top++] = left << 1;
+            }
+        }
+    }
+
+    private void analyzeOperand(int node) {
+        target[node] = node;
+        number[node] = tree.getValueIndex(node);
+        if (tree.getKind(node) == NodeKind.CONST) {
+            try {
+                value[node] = Integer.parseInt(tree.getValue(node));
+                constant[node] = true;
+            } catch (NumberFormatException e) {
+                // left as it is, it fails to compile
+            }
+        }
+    }
+
+    private void analyzeOperator(int node) {
+        int left = tree.getFirstChild(node);
+        int right = tree.getNextSibling(left);
+        char op = tree.getValue(node).charAt(0);
+        boolean leftConstant = constant[target[left]];
+        boolean rightConstant = constant[target[right]];
+        int a = value[target[left]];
+        int b = value[target[right]];
+
+        if (leftConstant && rightConstant && !(op == '/' && b == 0)) {
+            foldedConstants++;
+            setConstant(node, evaluate(op, a, b));
+            return;
+        }
+
+        int operand = SyntaxTree.NONE;
+        if (rightConstant && (b == 0 && (op == '+' || op == '-') || b == 1 && (op == '*' || op == '/'))) {
+            operand = left;
+        } else if (leftConstant && (a == 0 && op == '+' || a == 1 && op == '*')) {
+            operand = right;
+        } else if (op == '*' && (rightConstant && b == 0 && !mayFail[target[left]]
+                || leftConstant && a == 0 && !mayFail[target[right]])) {
+            simplifiedIdentities++;
+            setConstant(node, 0);
+            return;
+        }
+        if (operand != SyntaxTree.NONE) {
+            simplifiedIdentities++;
+            target[node] = target[operand];
+            number[node] = number[operand];
+            return;
+        }
+
+        target[node] = node;
+        mayFail[node] = mayFail[target[left]] || mayFail[target[right]] || op == '/' && (!rightConstant || b == 0);
+        number[node] = valueNumber(OPERATORS.indexOf(op), number[left], number[right]);
+        parent[target[left]] = node;
+        parent[target[right]] = node;
+
+        if (operatorCount == operators.length)
+            operators = Arrays.copyOf(operators, 2 * operatorCount);
+        operators[operatorCount++] = node;
+    }
+
+    private void setConstant(int node, int result) {
+        target[node] = node;
+        constant[node] = true;
+        value[node] = result;
+        // folded constants are told apart by value, a 30-bit half at a time
+        number[node] = valueNumber(OPERATORS.length(), result >>> 30, result & 0x3FFFFFFF);
+    }
+
+    private int valueNumber(int operator, int left, int right) {
+        Long key = (long) operator << 60 | (long) left << 30 | right;
+        Integer known = numbers.get(key);
+        if (known == null) {
+            known = nextNumber++;
+            numbers.put(key, known);
+        }
+        return known;
+    }
+
+    private static int evaluate(char op, int a, int b) {
+        switch (op) {
+            case '+':
+                return a + b;
+            case '-':
+                return a - b;
+            case '*':
+                return a * b;
+            case '/':
+                return a / b;
+            case '<':
+                return a < b ? 1 : 0;
+            default:
+                return a == b ? 1 : 0;
+        }
+    }
+
+    /*
+    * Counts the repeated operator expressions of the statement that are
+    * not part of a larger repeated one, all but their first occurrence.
+    */
+    private void countCommonSubexpressions() {
+        if (operatorCount < 2)
+            return;
+
+        int base = tree.getLexemeCount();
+        int[] occurrences = new int[nextNumber - base];
+        for (int i = 0; i < operatorCount; i++) {
+            occurrences[number[operators[i]] - base]++;
+        }
+        int[] largest = new int[occurrences.length];
+        for (int i = 0; i < operatorCount; i++) {
+            int node = operators[i];
+            int above = parent[node];
+            if (occurrences[number[node] - base] > 1
+                    && (above == SyntaxTree.NONE || occurrences[number[above] - base] == 1)) {
+                largest[number[node] - base]++;
+            }
+        }
+        for (int count : largest) {
+            if (count > 1)
+                commonSubexpressions += count - 1;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package muhzi.parser.errors;
+
+public final class Diagnostic {
+    /*
+    * An error found while parsing in recovering mode, with the position
+    * in the source where it was found. Lines and columns start at 1.
+    */
+
+    private final String message;
+    private final int offset;
+    private final int line;
+    private final int column;
+
+    public Diagnostic(String message, int offset, int line, int column) {
+        this.message = message;
+        this.offset = offset;
+        this.line = line;
+        this.column = column;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    @Override
+    public String toString() {
+        return line + ":" + column + ": " + message;
+    }
+}
@@ -4,4 +4,8 @@ public class ParserError extends Error{
     public ParserError() {
         super("Error occurred in parser");
     }
+
+    public ParserError(String message) {
+        super(message);
+    }
 }
@@ -0,0 +1,37 @@
+package muhzi.parser.errors;
+
+public abstract class SourceError extends Error {
+    /*
+    * An error found at a position of the source. Lines and columns start
+    * at 1, an error raised without a position has them all at -1. No
+    * stack trace is captured, errors are thrown and caught once per
+    * failed statement when recovering.
+    */
+
+    private final int offset;
+    private final int line;
+    private final int column;
+
+    protected SourceError(String message, int offset, int line, int column) {
+        super(message, null, false, false);
+        this.offset = offset;
+        this.line = line;
+        this.column = column;
+    }
+
+    public boolean hasPosition() {
+        return line > 0;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+}
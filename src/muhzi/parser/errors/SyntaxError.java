@@ -1,7 +1,11 @@
 package muhzi.parser.errors;
 
-public class SyntaxError extends Error {
+public class SyntaxError extends SourceError {
     public SyntaxError(String s) {
-        super(s);
+        this(s, -1, -1, -1);
+    }
+
+    public SyntaxError(String s, int offset, int line, int column) {
+        super(s, offset, line, column);
     }
 }
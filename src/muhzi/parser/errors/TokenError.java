@@ -1,7 +1,18 @@
 package muhzi.parser.errors;
 
-public class TokenError extends Error {
+public class TokenError extends SourceError {
+    private final String token;
+
     public TokenError(String token) {
-        super("Invalid Token: ["+token+"]");
+        this(token, -1, -1, -1);
+    }
+
+    public TokenError(String token, int offset, int line, int column) {
+        super("Invalid Token: ["+token+"]", offset, line, column);
+        this.token = token;
+    }
+
+    public String getToken() {
+        return token;
     }
 }
@@ -0,0 +1,129 @@
+package muhzi.app;
+
+import muhzi.parser.Parser;
+import muhzi.parser.SyntaxTree;
+import muhzi.parser.SyntaxTreeNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MillionStatementTest {
+    /*
+    * A program of a million statements is parsed, measured and laid out
+    * on a thread with the default stack size, which only works when none
+    * of these walks recurses along the stmt-sequence. The statements
+    * cycle through shapes of known level width, so every width can be
+    * checked.
+    */
+
+    private static final int STATEMENTS = 1_000_000;
+
+    private static final String[] SHAPES = {
+            "x := 1",
+            "write a + b",
+            "read z",
+            "if x < 1 then y := 2 end",
+            "repeat y := y - 1 until y = 0"
+    };
+    private static final int[] SHAPE_WIDTHS = {1, 2, 1, 3, 4};
+
+    @Test
+    void millionStatementsOnDefaultStack() throws Throwable {
+        Throwable[] failure = new Throwable[1];
+        Thread thread = new Thread(() -> {
+            try {
+                check();
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        }, "million-statements");
+        thread.start();
+        thread.join();
+        if (failure[0] != null)
+            throw failure[0];
+    }
+
+    private static void check() {
+        StringBuilder source = new StringBuilder();
+        long totalWidth = 0;
+        for (int i = 0; i < STATEMENTS; i++) {
+            if (i > 0)
+                source.append(";\n");
+            source.append(SHAPES[i % SHAPES.length]);
+            totalWidth += SHAPE_WIDTHS[i % SHAPES.length];
+        }
+
+        SyntaxTreeNode root = new Parser().parse(new BufferedReader(new StringReader(source.toString())));
+        assertNotNull(root);
+        SyntaxTree tree = root.getTree();
+
+        assertEquals(totalWidth, SyntaxTreeNode.getLevelWidth(root));
+
+        // the width of a statement covers the statements that follow it
+        int[] widths = tree.getLevelWidths();
+        long remaining = totalWidth;
+        int statements = 0;
+        for (int statement = root.getIndex(); statement != SyntaxTree.NONE; statement = tree.getNext(statement)) {
+            assertEquals(remaining, widths[statement], "statement " + statements);
+            remaining -= SHAPE_WIDTHS[statements % SHAPES.length];
+            statements++;
+        }
+        assertEquals(STATEMENTS, statements);
+        assertEquals(0, remaining);
+
+        checkDefaultLayout(root);
+        checkFullLayout(root);
+    }
+
+    // the first run of statements and a placeholder for all the others
+    private static void checkDefaultLayout(SyntaxTreeNode root) {
+        TreeDetail detail = new TreeDetail();
+        detail.track(root.getTree());
+        TreeLayout layout = TreeLayout.of(root, 0, 0, detail);
+
+        int topLevel = 0;
+        int last = TreeLayout.NONE;
+        for (int node = 0; node < layout.size(); node++) {
+            if (layout.getY(node) == 0) {
+                topLevel++;
+                last = node;
+            }
+        }
+        assertEquals(TreeDetail.RUN_LIMIT + 1, topLevel);
+        assertTrue(layout.isContinuation(last));
+        assertEquals(STATEMENTS - TreeDetail.RUN_LIMIT, layout.getHiddenCount(last));
+    }
+
+    // every run continued, so all the statements are laid out in one row
+    private static void checkFullLayout(SyntaxTreeNode root) {
+        SyntaxTree tree = root.getTree();
+        TreeDetail detail = new TreeDetail();
+        detail.track(tree);
+        int index = 0;
+        for (int statement = root.getIndex(); statement != SyntaxTree.NONE; statement = tree.getNext(statement)) {
+            if (index++ % TreeDetail.RUN_LIMIT == 0)
+                detail.continueFrom(statement);
+        }
+        TreeLayout layout = TreeLayout.of(root, 0, 0, detail);
+
+        int topLevel = 0;
+        double previousX = Double.NEGATIVE_INFINITY;
+        for (int node = 0; node < layout.size(); node++) {
+            assertFalse(layout.isContinuation(node));
+            if (layout.getY(node) == 0) {
+                assertTrue(layout.getX(node) > previousX, "node " + node + " out of order");
+                previousX = layout.getX(node);
+                topLevel++;
+            }
+        }
+        assertEquals(STATEMENTS, topLevel);
+        assertTrue(layout.getWidth() >= (STATEMENTS - 1) * (TreeLayout.NODE_WIDTH + TreeLayout.NODE_GAP),
+                "layout width " + layout.getWidth());
+    }
+}
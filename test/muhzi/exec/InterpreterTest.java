@@ -0,0 +1,171 @@
+package muhzi.exec;
+
+import muhzi.parser.NodeKind;
+import muhzi.parser.Parser;
+import muhzi.parser.SyntaxTreeNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InterpreterTest {
+    /*
+    * Random programs compiled to bytecode and interpreted must do what
+    * evaluating their tree directly does: write the same values, end with
+    * the same variables, and fail with the same error at the same place.
+    * A variable never assigned reads as 0, so only the others are compared.
+    */
+
+    private static final int PROGRAMS = 5000;
+
+    @Test
+    void bytecodeRunsLikeTheTree() throws IOException {
+        Random random = new Random(21);
+        int failing = 0;
+        for (int i = 0; i < PROGRAMS; i++) {
+            ProgramGenerator generator = new ProgramGenerator(random);
+            String source = generator.program();
+            int[] input = generator.input();
+            SyntaxTreeNode root = new Parser().parse(new BufferedReader(new StringReader(source)));
+
+            String expected = new Reference(input).run(root);
+            assertEquals(expected, interpret(root, input), source);
+            failing += expected.startsWith("error") ? 1 : 0;
+        }
+        // both ways of ending must be well covered
+        assertTrue(failing > PROGRAMS / 10 && PROGRAMS - failing > PROGRAMS / 10, "failing programs: " + failing);
+    }
+
+    @Test
+    void loopLimitStopsTheProgram() {
+        Program program = BytecodeCompiler.compile(parse("x := 0; repeat x := x + 1 until 0"));
+        Interpreter interpreter = new Interpreter(Input.of(), Output.NONE);
+        interpreter.setLoopLimit(1000);
+        ExecutionError error = assertThrows(ExecutionError.class, () -> interpreter.run(program));
+        assertEquals("Loop limit of 1000 iterations exceeded", error.getMessage());
+    }
+
+    private static String interpret(SyntaxTreeNode root, int[] input) throws IOException {
+        List<Integer> written = new ArrayList<>();
+        Program program = BytecodeCompiler.compile(root);
+        try {
+            int[] values = new Interpreter(Input.of(input), written::add).run(program);
+            Map<String, Integer> variables = new HashMap<>();
+            for (int slot = 0; slot < program.getVariableCount(); slot++) {
+                variables.put(program.getVariable(slot), values[slot]);
+            }
+            return "wrote " + written + " " + nonZero(variables);
+        } catch (ExecutionError e) {
+            return "error " + e.getMessage() + " at " + e.getLine() + ":" + e.getColumn() + " after " + written;
+        }
+    }
+
+    private static Map<String, Integer> nonZero(Map<String, Integer> variables) {
+        Map<String, Integer> set = new TreeMap<>();
+        for (Map.Entry<String, Integer> variable : variables.entrySet()) {
+            if (variable.getValue() != 0)
+                set.put(variable.getKey(), variable.getValue());
+        }
+        return set;
+    }
+
+    private static SyntaxTreeNode parse(String source) {
+        return new Parser().parse(new BufferedReader(new StringReader(source)));
+    }
+
+    /*
+    * Evaluates the node views recursively with variables in a map, the
+    * programs are small enough for the recursion.
+    */
+    private static final class Reference {
+        private final Input input;
+        private final List<Integer> written = new ArrayList<>();
+        private final Map<String, Integer> variables = new HashMap<>();
+
+        private Reference(int[] input) {
+            this.input = Input.of(input);
+        }
+
+        private String run(SyntaxTreeNode root) throws IOException {
+            try {
+                runStatements(root);
+                return "wrote " + written + " " + nonZero(variables);
+            } catch (ExecutionError e) {
+                return "error " + e.getMessage() + " at " + e.getLine() + ":" + e.getColumn() + " after " + written;
+            }
+        }
+
+        private void runStatements(SyntaxTreeNode statement) throws IOException {
+            for (; statement != null; statement = statement.getNextSameLevelNode()) {
+                SyntaxTreeNode[] children = statement.getChildren();
+                switch (statement.getKind()) {
+                    case ASSIGN:
+                        variables.put(statement.getValue(), evaluate(children[0]));
+                        break;
+                    case READ:
+                        Integer value = input.read(statement.getValue());
+                        if (value == null)
+                            throw error("No input left to read " + statement.getValue(), statement);
+                        variables.put(statement.getValue(), value);
+                        break;
+                    case WRITE:
+                        written.add(evaluate(children[0]));
+                        break;
+                    case IF:
+                        if (evaluate(children[0]) != 0) {
+                            runStatements(children[1]);
+                        } else if (children.length > 2) {
+                            runStatements(children[2]);
+                        }
+                        break;
+                    default:
+                        do {
+                            runStatements(children[0]);
+                        } while (evaluate(children[1]) == 0);
+                }
+            }
+        }
+
+        private int evaluate(SyntaxTreeNode node) {
+            if (node.getKind() == NodeKind.CONST)
+                return Integer.parseInt(node.getValue());
+            if (node.getKind() == NodeKind.ID)
+                return variables.getOrDefault(node.getValue(), 0);
+
+            SyntaxTreeNode[] children = node.getChildren();
+            int a = evaluate(children[0]);
+            int b = evaluate(children[1]);
+            switch (node.getValue()) {
+                case "+":
+                    return a + b;
+                case "-":
+                    return a - b;
+                case "*":
+                    return a * b;
+                case "/":
+                    if (b == 0)
+                        throw error("Division by zero", node);
+                    return a / b;
+                case "<":
+                    return a < b ? 1 : 0;
+                default:
+                    return a == b ? 1 : 0;
+            }
+        }
+
+        private static ExecutionError error(String message, SyntaxTreeNode node) {
+            return new ExecutionError(message, node.getOffset(), node.getLine(), node.getColumn());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package muhzi.exec;
+
+import muhzi.parser.Parser;
+import muhzi.parser.SyntaxTreeNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JitCompilerTest {
+    /*
+    * A compiled class must run a program exactly as the interpreter does,
+    * loop limit included. Programs too large for a class fall back to the
+    * interpreter, and that outcome is cached like a class.
+    */
+
+    private static final int PROGRAMS = 2000;
+
+    @Test
+    void compiledRunsLikeInterpreted() throws IOException {
+        JitCompiler jit = new JitCompiler(PROGRAMS);
+        Random random = new Random(22);
+        int compiled = 0;
+        for (int i = 0; i < PROGRAMS; i++) {
+            ProgramGenerator generator = new ProgramGenerator(random);
+            String source = generator.program();
+            int[] input = generator.input();
+            long loopLimit = random.nextInt(4) == 0 ? random.nextInt(20) : Long.MAX_VALUE;
+
+            NativeProgram program = jit.compile(parse(source));
+            compiled += program.isNative() ? 1 : 0;
+            assertEquals(interpret(program.getProgram(), input, loopLimit), run(program, input, loopLimit), source);
+        }
+        assertEquals(PROGRAMS, compiled);
+    }
+
+    @Test
+    void manyVariablesAndLargeConstants() throws IOException {
+        StringBuilder source = new StringBuilder("x := 0");
+        for (int i = 0; i < 150; i++) {
+            source.append("; v").append(i).append(" := x + 100000 + ").append(i * 70000);
+        }
+        source.append("; write v149");
+
+        NativeProgram program = new JitCompiler(1).compile(parse(source.toString()));
+        // past 256 slots the locals need wide loads and stores
+        assertTrue(program.getProgram().frameSize() > 256);
+        assertTrue(program.isNative());
+        assertEquals(interpret(program.getProgram(), new int[0], Long.MAX_VALUE),
+                run(program, new int[0], Long.MAX_VALUE));
+    }
+
+    @Test
+    void tooLargeProgramIsInterpretedAndCached() throws IOException {
+        StringBuilder source = new StringBuilder("x := 0");
+        for (int i = 0; i < 3000; i++) {
+            source.append("; x := x + ").append(i);
+        }
+        SyntaxTreeNode root = parse(source.toString());
+
+        JitCompiler jit = new JitCompiler(4);
+        NativeProgram program = jit.compile(root);
+        assertFalse(program.isNative());
+        assertEquals(interpret(program.getProgram(), new int[0], Long.MAX_VALUE),
+                run(program, new int[0], Long.MAX_VALUE));
+
+        assertFalse(jit.compile(root).isNative());
+        assertEquals(1, jit.getMisses());
+        assertEquals(1, jit.getHits());
+        assertEquals(1, jit.size());
+    }
+
+    @Test
+    void leastRecentlyUsedClassesAreDropped() {
+        JitCompiler jit = new JitCompiler(2);
+        SyntaxTreeNode first = parse("write 1");
+        jit.compile(first);
+        jit.compile(parse("write 1 + 2"));
+        jit.compile(first);
+        jit.compile(parse("write 1 + 2 * 3"));
+
+        assertEquals(1, jit.getEvictions());
+        assertEquals(2, jit.size());
+        jit.compile(first);
+        assertEquals(2, jit.getHits());
+    }
+
+    private static String interpret(Program program, int[] input, long loopLimit) throws IOException {
+        List<Integer> written = new ArrayList<>();
+        try {
+            Interpreter interpreter = new Interpreter(Input.of(input), written::add);
+            interpreter.setLoopLimit(loopLimit);
+            return "wrote " + written + " " + Arrays.toString(interpreter.run(program));
+        } catch (ExecutionError e) {
+            return "error " + e.getMessage() + " at " + e.getLine() + ":" + e.getColumn() + " after " + written;
+        }
+    }
+
+    private static String run(NativeProgram program, int[] input, long loopLimit) throws IOException {
+        List<Integer> written = new ArrayList<>();
+        try {
+            return "wrote " + written + " " + Arrays.toString(program.run(Input.of(input), written::add, loopLimit));
+        } catch (ExecutionError e) {
+            return "error " + e.getMessage() + " at " + e.getLine() + ":" + e.getColumn() + " after " + written;
+        }
+    }
+
+    private static SyntaxTreeNode parse(String source) {
+        return new Parser().parse(new BufferedReader(new StringReader(source)));
+    }
+}
@@ -0,0 +1,94 @@
+package muhzi.exec;
+
+import java.util.Random;
+
+final class ProgramGenerator {
+    /*
+    * Random programs that always terminate: every repeat loop counts up a
+    * counter of its own and stops after a few rounds, whatever its body
+    * does to the other variables. Expressions mix comparisons into the
+    * arithmetic and use large constants, so overflow, division by zero
+    * and running out of input all happen now and then.
+    */
+
+    private static final String[] OPERATORS = {"+", "-", "*", "/", "<", "="};
+
+    private final Random random;
+    private final StringBuilder out = new StringBuilder();
+    private int loops;
+
+    ProgramGenerator(Random random) {
+        this.random = random;
+    }
+
+    String program() {
+        sequence(1 + random.nextInt(12), 3);
+        return out.toString();
+    }
+
+    int[] input() {
+        int[] values = new int[random.nextInt(8)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(21) - 10;
+        }
+        return values;
+    }
+
+    private void sequence(int statements, int depth) {
+        for (int i = 0; i < statements; i++) {
+            if (i > 0)
+                out.append(";\n");
+            statement(depth);
+        }
+    }
+
+    private void statement(int depth) {
+        switch (random.nextInt(depth > 0 ? 6 : 4)) {
+            case 0:
+            case 1:
+                out.append(variable()).append(" := ").append(expression(3));
+                break;
+            case 2:
+                out.append("read ").append(variable());
+                break;
+            case 3:
+                out.append("write ").append(expression(3));
+                break;
+            case 4:
+                out.append("if ").append(expression(2)).append(" then ");
+                sequence(1 + random.nextInt(3), depth - 1);
+                if (random.nextBoolean()) {
+                    out.append(" else ");
+                    sequence(1 + random.nextInt(3), depth - 1);
+                }
+                out.append(" end");
+                break;
+            default:
+                String counter = "L" + loops++;
+                out.append(counter).append(" := 0; repeat ");
+                sequence(1 + random.nextInt(3), depth - 1);
+                out.append("; ").append(counter).append(" := ").append(counter).append(" + 1 until ")
+                        .append(random.nextInt(5)).append(" < ").append(counter);
+        }
+    }
+
+    private String variable() {
+        return "v" + random.nextInt(5);
+    }
+
+    private String expression(int depth) {
+        if (depth <= 0 || random.nextInt(3) == 0) {
+            int choice = random.nextInt(10);
+            if (choice < 4)
+                return variable();
+            if (choice < 5 && loops > 0)
+                return "L" + random.nextInt(loops);
+            return String.valueOf(random.nextInt(choice == 9 ? 100000 : 7));
+        }
+
+        String operator = OPERATORS[random.nextInt(OPERATORS.length)];
+        String expression = expression(depth - 1) + " " + operator + " " + expression(depth - 1);
+        return operator.equals("<") || operator.equals("=") || random.nextBoolean() ?
+                "(" + expression + ")" : expression;
+    }
+}
@@ -0,0 +1,110 @@
+package muhzi.exec;
+
+import muhzi.parser.NodeKind;
+import muhzi.parser.OptimizationResult;
+import muhzi.parser.Parser;
+import muhzi.parser.SyntaxTreeNode;
+import muhzi.parser.TreeOptimizer;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TreeOptimizerTest {
+    /*
+    * An optimized program must run as the original does. Variables only
+    * assigned in dead code are gone from it, but they were never assigned
+    * in the original either, so the variables that are not 0 must match.
+    * The node counts reported must be those of the trees, and optimizing
+    * a second time must find nothing left to fold or remove.
+    */
+
+    private static final int PROGRAMS = 5000;
+
+    @Test
+    void optimizedRunsLikeOriginal() throws IOException {
+        Random random = new Random(23);
+        int eliminated = 0;
+        for (int i = 0; i < PROGRAMS; i++) {
+            ProgramGenerator generator = new ProgramGenerator(random);
+            String source = generator.program();
+            int[] input = generator.input();
+            SyntaxTreeNode root = parse(source);
+
+            OptimizationResult result = TreeOptimizer.optimize(root);
+            SyntaxTreeNode optimized = result.getTree();
+            assertEquals(run(root, input), run(optimized, input), source);
+            assertEquals(count(root), result.getNodesBefore(), source);
+            assertEquals(count(optimized), result.getNodesAfter(), source);
+
+            OptimizationResult again = TreeOptimizer.optimize(optimized);
+            assertEquals(0, again.getFoldedConstants() + again.getSimplifiedIdentities() + again.getDeadBranches(),
+                    source);
+            eliminated += result.getNodesEliminated();
+        }
+        assertTrue(eliminated > PROGRAMS, "nodes eliminated: " + eliminated);
+    }
+
+    @Test
+    void deadStatementsOfALoopKeepOne() {
+        OptimizationResult result = TreeOptimizer.optimize(
+                parse("repeat if 0 then write 1 end; if 0 then write 2 end until 1"));
+        assertEquals(1, result.getDeadBranches());
+
+        SyntaxTreeNode loop = result.getTree();
+        assertEquals(NodeKind.REPEAT, loop.getKind());
+        SyntaxTreeNode body = loop.getChildren()[0];
+        assertEquals(NodeKind.IF, body.getKind());
+        assertNull(body.getNextSameLevelNode());
+        assertEquals(count(loop), result.getNodesAfter());
+    }
+
+    @Test
+    void divisionByZeroIsKept() throws IOException {
+        SyntaxTreeNode root = parse("x := 4; write x * 0; write 0 * (x / 0)");
+        OptimizationResult result = TreeOptimizer.optimize(root);
+        assertEquals(run(root, new int[0]), run(result.getTree(), new int[0]));
+        assertTrue(run(result.getTree(), new int[0]).startsWith("error Division by zero"));
+    }
+
+    private static String run(SyntaxTreeNode root, int[] input) throws IOException {
+        List<Integer> written = new ArrayList<>();
+        Program program = BytecodeCompiler.compile(root);
+        try {
+            int[] values = new Interpreter(Input.of(input), written::add).run(program);
+            Map<String, Integer> variables = new TreeMap<>();
+            for (int slot = 0; slot < program.getVariableCount(); slot++) {
+                if (values[slot] != 0)
+                    variables.put(program.getVariable(slot), values[slot]);
+            }
+            return "wrote " + written + " " + variables;
+        } catch (ExecutionError e) {
+            return "error " + e.getMessage() + " at " + e.getLine() + ":" + e.getColumn() + " after " + written;
+        }
+    }
+
+    private static int count(SyntaxTreeNode statement) {
+        int nodes = 0;
+        for (; statement != null; statement = statement.getNextSameLevelNode()) {
+            nodes++;
+            for (SyntaxTreeNode child : statement.getChildren()) {
+                nodes += count(child);
+            }
+        }
+        return nodes;
+    }
+
+    private static SyntaxTreeNode parse(String source) {
+        return new Parser().parse(new BufferedReader(new StringReader(source)));
+    }
+}
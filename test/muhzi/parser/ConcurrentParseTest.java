@@ -0,0 +1,229 @@
+package muhzi.parser;
+
+import muhzi.parser.errors.SourceError;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrentParseTest {
+    /*
+    * One Parser shared by platform threads and, on Java 21 and later,
+    * virtual threads, all parsing different programs at once in both
+    * modes. Every outcome, tree or error, must be the one a parse on a
+    * single thread gives. A third of the programs fail, so contexts go
+    * back to the pool after an error and are reused by other threads.
+    */
+
+    private static final int PROGRAMS = 60;
+    private static final int PLATFORM_THREADS = 8;
+    private static final int VIRTUAL_THREADS = 32;
+    private static final int ROUNDS = 25;
+
+    @Test
+    void sharedParserGivesSingleThreadedResults() throws Exception {
+        List<String> programs = new ArrayList<>();
+        Random random = new Random(5);
+        for (int i = 0; i < PROGRAMS; i++) {
+            String program = new ProgramGenerator(random).program();
+            programs.add(i % 3 == 2 ? breakProgram(program, random) : program);
+        }
+
+        Parser reference = new Parser();
+        List<String> expected = new ArrayList<>();
+        List<String> expectedRecovering = new ArrayList<>();
+        int failing = 0;
+        for (String program : programs) {
+            String outcome = parse(reference, program);
+            failing += outcome.startsWith("error") ? 1 : 0;
+            expected.add(outcome);
+            expectedRecovering.add(parseRecovering(reference, program));
+        }
+        assertTrue(failing >= PROGRAMS / 4, "too few failing programs: " + failing);
+
+        Parser shared = new Parser();
+        List<ExecutorService> executors = new ArrayList<>();
+        List<Integer> threadCounts = new ArrayList<>();
+        executors.add(Executors.newFixedThreadPool(PLATFORM_THREADS));
+        threadCounts.add(PLATFORM_THREADS);
+        ExecutorService virtual = newVirtualThreadExecutor();
+        if (virtual != null) {
+            executors.add(virtual);
+            threadCounts.add(VIRTUAL_THREADS);
+        }
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        int seed = 0;
+        for (int e = 0; e < executors.size(); e++) {
+            for (int t = 0; t < threadCounts.get(e); t++) {
+                Random order = new Random(seed++);
+                futures.add(executors.get(e).submit(() -> {
+                    start.await();
+                    List<Integer> indices = new ArrayList<>();
+                    for (int i = 0; i < PROGRAMS; i++) {
+                        indices.add(i);
+                    }
+                    for (int round = 0; round < ROUNDS; round++) {
+                        Collections.shuffle(indices, order);
+                        for (int i : indices) {
+                            if ((i + round) % 2 == 0) {
+                                assertEquals(expected.get(i), parse(shared, programs.get(i)),
+                                        "program " + i);
+                            } else {
+                                assertEquals(expectedRecovering.get(i), parseRecovering(shared, programs.get(i)),
+                                        "program " + i + " when recovering");
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+        }
+
+        start.countDown();
+        try {
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.MINUTES);
+            }
+        } finally {
+            for (ExecutorService executor : executors) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static String parse(Parser parser, String program) throws IOException {
+        try {
+            return "tree " + encode(parser.parse(new BufferedReader(new StringReader(program))));
+        } catch (SourceError e) {
+            return "error " + e.getClass().getSimpleName() + " " + e.getMessage() +
+                    " at " + e.getOffset() + " " + e.getLine() + ":" + e.getColumn();
+        }
+    }
+
+    private static String parseRecovering(Parser parser, String program) throws IOException {
+        ParseResult result = parser.parseRecovering(new BufferedReader(new StringReader(program)));
+        return "tree " + encode(result.getTree()) + " " + result.getDiagnostics();
+    }
+
+    private static String encode(SyntaxTreeNode root) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SyntaxTreeWriter(out).write(root);
+        return Base64.getEncoder().encodeToString(out.toByteArray());
+    }
+
+    private static String breakProgram(String program, Random random) {
+        String[] damage = {")", "(", ":=", "then", "; ;", "$", "end", "+ *"};
+        int at = random.nextInt(program.length());
+        return program.substring(0, at) + " " + damage[random.nextInt(damage.length)] + " " +
+                program.substring(at);
+    }
+
+    private static final class ProgramGenerator {
+        private static final String[] OPERATORS = {"+", "-", "*", "/"};
+
+        private final Random random;
+        private final StringBuilder out = new StringBuilder();
+
+        private ProgramGenerator(Random random) {
+            this.random = random;
+        }
+
+        private String program() {
+            sequence(10 + random.nextInt(40), 0);
+            return out.toString();
+        }
+
+        private void sequence(int statements, int depth) {
+            for (int i = 0; i < statements; i++) {
+                if (i > 0)
+                    out.append(";\n");
+                statement(depth);
+            }
+        }
+
+        private void statement(int depth) {
+            switch (depth > 2 ? random.nextInt(3) : random.nextInt(5)) {
+                case 0:
+                    out.append("x").append(random.nextInt(5)).append(" := ");
+                    expression(0);
+                    break;
+                case 1:
+                    out.append("write ");
+                    expression(0);
+                    break;
+                case 2:
+                    out.append("read x").append(random.nextInt(5));
+                    break;
+                case 3:
+                    out.append("if ");
+                    comparison();
+                    out.append(" then\n");
+                    sequence(1 + random.nextInt(3), depth + 1);
+                    if (random.nextBoolean()) {
+                        out.append("\nelse\n");
+                        sequence(1 + random.nextInt(3), depth + 1);
+                    }
+                    out.append("\nend");
+                    break;
+                default:
+                    out.append("repeat\n");
+                    sequence(1 + random.nextInt(3), depth + 1);
+                    out.append("\nuntil ");
+                    comparison();
+            }
+        }
+
+        private void comparison() {
+            expression(0);
+            out.append(random.nextBoolean() ? " < " : " = ");
+            expression(0);
+        }
+
+        private void expression(int depth) {
+            factor(depth);
+            int operators = random.nextInt(4);
+            for (int i = 0; i < operators; i++) {
+                out.append(' ').append(OPERATORS[random.nextInt(OPERATORS.length)]).append(' ');
+                factor(depth);
+            }
+        }
+
+        private void factor(int depth) {
+            int choice = random.nextInt(depth > 2 ? 2 : 3);
+            if (choice == 0) {
+                out.append(random.nextInt(1000));
+            } else if (choice == 1) {
+                out.append('x').append(random.nextInt(5));
+            } else {
+                out.append('(');
+                expression(depth + 1);
+                out.append(')');
+            }
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package muhzi.parser;
+
+import muhzi.parser.errors.SourceError;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IncrementalParserTest {
+    /*
+    * After every edit the tree must be the one a full parse of the new
+    * text gives, node for node with the same spans, lines and columns,
+    * and an edit that breaks the program must fail with the same error.
+    * Most edits are small changes to numbers, which keep the program
+    * valid so the following edits are applied to a tree again. The
+    * subtree sizes and sequence lengths the tree counted must match it
+    * too.
+    */
+
+    private static final int PROGRAMS = 40;
+    private static final int EDITS = 300;
+
+    private static final String[] SNIPPETS = {
+            "1", "x", " ", "+ 2", ";", "; read y", "if", "end", "(", ")", ":=", "{c}", "0", "a", "\n", "7*"
+    };
+
+    @Test
+    void editsGiveTheTreeOfAFullParse() {
+        Random random = new Random(11);
+        int edits = 0;
+        int incremental = 0;
+        for (int p = 0; p < PROGRAMS; p++) {
+            String text = new ProgramGenerator(random).program();
+            IncrementalParser parser = new IncrementalParser();
+            parser.parse(text);
+            for (int e = 0; e < EDITS; e++) {
+                int offset = random.nextInt(text.length() + 1);
+                int removed = Math.min(text.length() - offset, random.nextInt(3));
+                String inserted = random.nextInt(3) == 0 ? "" : SNIPPETS[random.nextInt(SNIPPETS.length)];
+                if (random.nextBoolean()) {
+                    int digit = random.nextInt(text.length());
+                    if (Character.isDigit(text.charAt(digit))) {
+                        offset = digit;
+                        removed = 1;
+                        inserted = String.valueOf(random.nextInt(100));
+                    }
+                }
+                String edited = text.substring(0, offset) + inserted + text.substring(offset + removed);
+
+                String expected = parse(edited);
+                String actual;
+                try {
+                    SyntaxTreeNode root = parser.edit(offset, removed, inserted);
+                    actual = "tree " + dump(root);
+                    checkCounts(root.getTree(), root.getIndex(), random);
+                } catch (SourceError error) {
+                    actual = error(error);
+                }
+                assertEquals(expected, actual, "edit " + e + " of\n" + text + "\nto\n" + edited);
+                assertEquals(edited, parser.getText());
+                edits++;
+                incremental += parser.getLastReparsedLength() < edited.length() ? 1 : 0;
+
+                text = edited;
+                if (expected.startsWith("error") && random.nextInt(4) == 0) {
+                    text = new ProgramGenerator(random).program();
+                    parser.parse(text);
+                }
+            }
+        }
+        assertTrue(incremental > edits / 2, incremental + " of " + edits + " edits reparsed in place");
+    }
+
+    @Test
+    void editsAtStatementBoundariesReparseOneStatement() {
+        StringBuilder program = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            program.append(i > 0 ? ";\n" : "").append(i % 2 == 0 ? "x := " + i : "if x < 1 then y := 2 end");
+        }
+        IncrementalParser parser = new IncrementalParser();
+        parser.parse(program.toString());
+
+        // append at the end, insert at the start and type at the end of a statement
+        checkSmallEdit(parser, parser.getText().length(), 0, ";\nwrite x");
+        checkSmallEdit(parser, 0, 0, "read z;\n");
+        int middle = parser.getText().indexOf("0;", parser.getText().length() / 2) + 1;
+        checkSmallEdit(parser, middle, 0, "1");
+        checkSmallEdit(parser, middle, 1, "");
+    }
+
+    @Test
+    void editsJoiningWordsAreRejected() {
+        String[][] cases = {
+                // text, offset, removed, inserted
+                {"read x;\nread y", "6", "2", " "},
+                {"if x < 1 then y := 2 end;\nwrite y", "24", "0", "d"},
+                {"x := a;\ny := b", "0", "0", "read "},
+                {"write a;\nwrite b", "9", "0", "x"},
+                // a number may touch the keyword after it, a name may not
+                {"if x < 1 then y := 2end", "19", "1", "b"},
+                {"repeat y := 2until y = 1", "12", "1", "b"},
+        };
+        for (String[] edit : cases) {
+            IncrementalParser parser = new IncrementalParser();
+            parser.parse(edit[0]);
+            int offset = Integer.parseInt(edit[1]);
+            int removed = Integer.parseInt(edit[2]);
+            String edited = edit[0].substring(0, offset) + edit[3] + edit[0].substring(offset + removed);
+            String actual;
+            try {
+                actual = "tree " + dump(parser.edit(offset, removed, edit[3]));
+            } catch (SourceError error) {
+                actual = error(error);
+            }
+            assertEquals(parse(edited), actual, edited);
+        }
+    }
+
+    /*
+    * The counts a tree keeps for the layout must still be those of the
+    * tree after the edit. Only some are asked for, so counts never asked
+    * for before an edit are also there after it.
+    */
+    private static void checkCounts(SyntaxTree tree, int first, Random random) {
+        int statements = 0;
+        for (int statement = first; statement != SyntaxTree.NONE; statement = tree.getNext(statement)) {
+            statements++;
+            if (random.nextInt(3) == 0)
+                assertEquals(tree.getSubtreeSize(statement), tree.getCountedSubtreeSize(statement));
+            for (int child = tree.getFirstChild(statement); child != SyntaxTree.NONE;
+                 child = tree.getNextSibling(child)) {
+                if (!tree.getKind(child).isExpression())
+                    checkCounts(tree, child, random);
+            }
+        }
+        if (random.nextBoolean())
+            assertEquals(statements, tree.getSequenceLength(first));
+    }
+
+    private static void checkSmallEdit(IncrementalParser parser, int offset, int removed, String inserted) {
+        String text = parser.getText();
+        String edited = text.substring(0, offset) + inserted + text.substring(offset + removed);
+        assertEquals(parse(edited), "tree " + dump(parser.edit(offset, removed, inserted)), edited);
+        assertTrue(parser.getLastReparsedLength() < 40, "reparsed " + parser.getLastReparsedLength());
+    }
+
+    private static String parse(String text) {
+        try {
+            return "tree " + dump(new Parser().parse(new BufferedReader(new StringReader(text))));
+        } catch (SourceError error) {
+            return error(error);
+        }
+    }
+
+    private static String error(SourceError error) {
+        return "error " + error.getClass().getSimpleName() + " " + error.getMessage() +
+                " at " + error.getOffset() + " " + error.getLine() + ":" + error.getColumn();
+    }
+
+    private static String dump(SyntaxTreeNode root) {
+        StringBuilder out = new StringBuilder();
+        dumpSequence(root.getTree(), root.getIndex(), out);
+        return out.toString();
+    }
+
+    private static void dumpSequence(SyntaxTree tree, int statement, StringBuilder out) {
+        out.append('[');
+        for (; statement != SyntaxTree.NONE; statement = tree.getNext(statement)) {
+            dumpNode(tree, statement, out);
+        }
+        out.append(']');
+    }
+
+    private static void dumpNode(SyntaxTree tree, int node, StringBuilder out) {
+        out.append('(').append(tree.getKind(node)).append(' ').append(tree.getValue(node))
+                .append(' ').append(tree.getOffset(node)).append('+').append(tree.getLength(node))
+                .append(' ').append(tree.getLine(node)).append(':').append(tree.getColumn(node));
+        for (int child = tree.getFirstChild(node); child != SyntaxTree.NONE; child = tree.getNextSibling(child)) {
+            out.append(' ');
+            if (tree.getKind(child).isExpression()) {
+                dumpNode(tree, child, out);
+            } else {
+                dumpSequence(tree, child, out);
+            }
+        }
+        out.append(')');
+    }
+
+    private static final class ProgramGenerator {
+        private final Random random;
+        private final StringBuilder out = new StringBuilder();
+
+        private ProgramGenerator(Random random) {
+            this.random = random;
+        }
+
+        private String program() {
+            sequence(5 + random.nextInt(20), 0);
+            return out.toString();
+        }
+
+        private void sequence(int statements, int depth) {
+            for (int i = 0; i < statements; i++) {
+                if (i > 0)
+                    out.append(random.nextInt(4) == 0 ? "; {note}\n" : ";\n");
+                statement(depth);
+            }
+        }
+
+        private void statement(int depth) {
+            switch (random.nextInt(depth > 2 ? 3 : 5)) {
+                case 0:
+                    out.append(variable()).append(" := ").append(expression(2));
+                    break;
+                case 1:
+                    out.append("write ").append(expression(2));
+                    break;
+                case 2:
+                    out.append("read ").append(variable());
+                    break;
+                case 3:
+                    out.append("if ").append(expression(1)).append(" < ").append(expression(1)).append(" then\n");
+                    sequence(1 + random.nextInt(3), depth + 1);
+                    if (random.nextBoolean()) {
+                        out.append("\nelse\n");
+                        sequence(1 + random.nextInt(3), depth + 1);
+                    }
+                    out.append("\nend");
+                    break;
+                default:
+                    out.append("repeat\n");
+                    sequence(1 + random.nextInt(3), depth + 1);
+                    out.append("\nuntil ").append(expression(1)).append(" = ").append(expression(1));
+            }
+        }
+
+        private String variable() {
+            return String.valueOf((char) ('a' + random.nextInt(5)));
+        }
+
+        private String expression(int depth) {
+            if (depth == 0 || random.nextInt(3) == 0)
+                return random.nextBoolean() ? variable() : String.valueOf(random.nextInt(100));
+            String expression = expression(depth - 1) + " " + "+-*/".charAt(random.nextInt(4)) + " " +
+                    expression(depth - 1);
+            return random.nextBoolean() ? "(" + expression + ")" : expression;
+        }
+    }
+}